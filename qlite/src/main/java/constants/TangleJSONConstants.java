@@ -22,6 +22,7 @@ public class TangleJSONConstants {
     // IAMStream
     public static final String IAM_PACKET_MESSAGE = "content";
     public static final String IAM_PACKET_SIGNATURE = "signature";
+    public static final String IAM_PACKET_VERSION = "version";
 
     // Qubic
     public static final String QUBIC_ASSEMBLY = "assembly";
@@ -5,4 +5,8 @@ public class IotaAPICallFailedException extends RuntimeException {
     public IotaAPICallFailedException(Throwable t) {
         super("Iota API call failed.", t);
     }
+
+    public IotaAPICallFailedException(String error, Throwable t) {
+        super(error, t);
+    }
 }
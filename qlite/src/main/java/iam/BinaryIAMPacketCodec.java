@@ -0,0 +1,233 @@
+package iam;
+
+import exceptions.IncompleteIAMChainException;
+import iam.exceptions.IAMPacketSizeLimitExceeded;
+import iam.exceptions.IllegalIAMPacketSizeException;
+import tangle.JSONCodec;
+import tangle.TryteTool;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * @author microhash
+ *
+ * Encodes and decodes IAM packets in the binary format (IAMPacketFormat.BINARY).
+ *
+ * Root transaction: '9' | version | amount of further fragments | payload length (3 trytes) | hash block | payload
+ * Further fragments: payload (continued)
+ *
+ * The hashes of the hash block are stored as plain trytes. The payload consists of a flag byte, the length of the
+ * raw signature (2 bytes), the signature and the message (ASCII JSON, deflated if the flag is set). It is packed
+ * with TryteTool.bytesToDenseTrytes(), so it never contains a '9'. The leading "9A" tells it apart from the JSON
+ * format: its root starts with the tryte encoding of a hash tryte or '{', and "9A" only encodes the ASCII
+ * character 27 (ESC). A leading '9' alone is not enough, the letter 'Q' (81) encodes to "9C".
+ * */
+enum BinaryIAMPacketCodec {;
+
+    static final char MARKER = '9';
+    static final char VERSION = 'A';
+
+    private static final int HEADER_LENGTH = 6;
+    private static final int TRYTES_PER_FRAGMENT = TryteTool.TRYTES_PER_TRANSACTION_MESSAGE - 1; // last tryte is cut off when reading
+    private static final int MAX_PAYLOAD_BYTES = 26 * 26 * 26 - 1;
+    private static final int MAX_INFLATED_MESSAGE_BYTES = 1 << 16;
+    private static final byte FLAG_DEFLATED = 1;
+
+    /**
+     * @param rootTrytes the message trytes of a root transaction
+     * @return TRUE if the root transaction belongs to a binary IAM packet
+     * */
+    static boolean isBinaryRoot(String rootTrytes) {
+        return rootTrytes.length() >= HEADER_LENGTH && rootTrytes.charAt(0) == MARKER && rootTrytes.charAt(1) == VERSION;
+    }
+
+    /**
+     * Encodes an IAM packet and splits it into fragments. The first fragment (header and beginning of the
+     * payload) still has to be completed with buildRootFragment() once the hashes of the others are known.
+     * @param messageString the serialized message of the IAM packet as it was signed
+     * @param signature     the raw signature
+     * @return the trytes of each fragment in order
+     * @throws IAMPacketSizeLimitExceeded if the packet requires more than IAMStream.MAX_FRAGMENTS_PER_IAM_PACKET fragments
+     * */
+    static String[] encodeInFragments(String messageString, byte[] signature) {
+        byte[] payload = encodePayload(messageString, signature);
+        if(payload.length > MAX_PAYLOAD_BYTES)
+            throw new IAMPacketSizeLimitExceeded();
+        String[] fragments = fragmentPayload(TryteTool.bytesToDenseTrytes(payload));
+        fragments[0] = "" + MARKER + VERSION + intToLetter(fragments.length-1) + intToLetters(payload.length) + fragments[0];
+        return fragments;
+    }
+
+    /**
+     * @param firstFragment the first fragment returned by encodeInFragments()
+     * @param hashBlock     the concatenated hashes of all other fragments in order
+     * @return the message trytes of the root transaction
+     * */
+    static String buildRootFragment(String firstFragment, String hashBlock) {
+        return firstFragment.substring(0, HEADER_LENGTH) + hashBlock + firstFragment.substring(HEADER_LENGTH);
+    }
+
+    /**
+     * Decodes a binary IAM packet.
+     * @param rootHash       hash of the root transaction (for error messages)
+     * @param rootTrytes     the message trytes of the root transaction
+     * @param fragmentReader reads the message trytes of a further fragment by its hash, NULL if not found
+     * @return the decoded IAM packet
+     * @throws IllegalArgumentException      if the packet is malformed
+     * @throws IllegalIAMPacketSizeException if the packet consists of too many fragments
+     * @throws IncompleteIAMChainException   if a fragment could not be found
+     * */
+    static IAMPacket decode(String rootHash, String rootTrytes, Function<String, String> fragmentReader) {
+
+        String[] hashes = readHashBlock(rootHash, rootTrytes);
+        int payloadBytes = lettersToInt(rootTrytes, 3);
+        int payloadTrytes = TryteTool.lengthOfDenseTrytes(payloadBytes);
+        int hashBlockEnd = HEADER_LENGTH + hashes.length * TryteTool.TRYTES_PER_HASH;
+
+        StringBuilder payload = new StringBuilder(payloadTrytes);
+        payload.append(rootTrytes, hashBlockEnd, Math.min(Math.min(rootTrytes.length(), TRYTES_PER_FRAGMENT), hashBlockEnd + payloadTrytes));
+        for(int i = 0; i < hashes.length && payload.length() < payloadTrytes; i++) {
+            String fragment = fragmentReader.apply(hashes[i]);
+            if(fragment == null)
+                throw new IncompleteIAMChainException(hashes[i]);
+            payload.append(fragment, 0, Math.min(fragment.length(), payloadTrytes - payload.length()));
+        }
+
+        return decodePayload(TryteTool.denseTrytesToBytes(payload, payloadBytes));
+    }
+
+    /**
+     * @param rootHash   hash of the root transaction (for error messages)
+     * @param rootTrytes the message trytes of the root transaction
+     * @return the hashes of the further fragments in order
+     * @throws IllegalArgumentException      if the root is malformed
+     * @throws IllegalIAMPacketSizeException if the packet consists of too many fragments
+     * */
+    static String[] readHashBlock(String rootHash, String rootTrytes) {
+
+        if(!isBinaryRoot(rootTrytes))
+            throw new IllegalArgumentException("not a binary iam packet of a supported version");
+
+        int amountOfHashes = letterToInt(rootTrytes.charAt(2));
+        if(amountOfHashes+1 > IAMStream.MAX_FRAGMENTS_PER_IAM_PACKET)
+            throw new IllegalIAMPacketSizeException(rootHash);
+
+        int hashBlockEnd = HEADER_LENGTH + amountOfHashes * TryteTool.TRYTES_PER_HASH;
+        if(hashBlockEnd > rootTrytes.length())
+            throw new IllegalArgumentException("hash block exceeds root transaction");
+
+        String[] hashes = new String[amountOfHashes];
+        for(int i = 0; i < amountOfHashes; i++)
+            hashes[i] = rootTrytes.substring(HEADER_LENGTH + i * TryteTool.TRYTES_PER_HASH, HEADER_LENGTH + (i+1) * TryteTool.TRYTES_PER_HASH);
+        return hashes;
+    }
+
+    static byte[] encodePayload(String messageString, byte[] signature) {
+        byte[] messageBytes = messageString.getBytes(StandardCharsets.US_ASCII);
+        byte[] deflated = deflate(messageBytes);
+        boolean useDeflated = deflated.length < messageBytes.length;
+        byte[] content = useDeflated ? deflated : messageBytes;
+
+        return ByteBuffer.allocate(1 + 2 + signature.length + content.length)
+                .put(useDeflated ? FLAG_DEFLATED : 0)
+                .putShort((short)signature.length)
+                .put(signature)
+                .put(content)
+                .array();
+    }
+
+    static IAMPacket decodePayload(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        try {
+            byte flags = buffer.get();
+            byte[] signature = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(signature);
+            byte[] content = new byte[buffer.remaining()];
+            buffer.get(content);
+            byte[] messageBytes = (flags & FLAG_DEFLATED) != 0 ? inflate(content) : content;
+            String messageString = new String(messageBytes, StandardCharsets.US_ASCII);
+            return new IAMPacket(JSONCodec.parse(messageString), messageString, TryteTool.bytesToTrytes(signature), true);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("malformed binary iam packet payload", e);
+        }
+    }
+
+    private static String[] fragmentPayload(String payloadTrytes) {
+        int amountOfHashes = 0;
+        while (TRYTES_PER_FRAGMENT - HEADER_LENGTH - TryteTool.TRYTES_PER_HASH * amountOfHashes + TRYTES_PER_FRAGMENT * amountOfHashes < payloadTrytes.length())
+            amountOfHashes++;
+
+        if(amountOfHashes+1 > IAMStream.MAX_FRAGMENTS_PER_IAM_PACKET)
+            throw new IAMPacketSizeLimitExceeded();
+
+        String[] fragments = new String[amountOfHashes+1];
+        int rootCapacity = TRYTES_PER_FRAGMENT - HEADER_LENGTH - TryteTool.TRYTES_PER_HASH * amountOfHashes;
+        fragments[0] = payloadTrytes.substring(0, Math.min(payloadTrytes.length(), rootCapacity));
+        for(int i = 1; i < fragments.length; i++) {
+            int cutStart = rootCapacity + (i-1) * TRYTES_PER_FRAGMENT;
+            fragments[i] = payloadTrytes.substring(cutStart, Math.min(payloadTrytes.length(), cutStart + TRYTES_PER_FRAGMENT));
+        }
+        return fragments;
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+            byte[] chunk = new byte[1024];
+            while (!deflater.finished())
+                out.write(chunk, 0, deflater.deflate(chunk));
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(bytes);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] chunk = new byte[1024];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(chunk);
+                if(inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new IllegalArgumentException("truncated deflate stream");
+                out.write(chunk, 0, inflated);
+                if(out.size() > MAX_INFLATED_MESSAGE_BYTES)
+                    throw new IllegalArgumentException("inflated message exceeds " + MAX_INFLATED_MESSAGE_BYTES + " bytes");
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static char intToLetter(int n) {
+        return (char)('A' + n);
+    }
+
+    private static String intToLetters(int n) {
+        return "" + intToLetter(n / (26*26)) + intToLetter(n / 26 % 26) + intToLetter(n % 26);
+    }
+
+    private static int letterToInt(char c) {
+        if(c < 'A' || c > 'Z')
+            throw new IllegalArgumentException("unexpected tryte '"+c+"' in header");
+        return c - 'A';
+    }
+
+    private static int lettersToInt(String trytes, int offset) {
+        return letterToInt(trytes.charAt(offset)) * 26 * 26 + letterToInt(trytes.charAt(offset+1)) * 26 + letterToInt(trytes.charAt(offset+2));
+    }
+}
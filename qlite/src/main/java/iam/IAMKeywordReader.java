@@ -1,8 +1,11 @@
 package iam;
 
+import exceptions.IotaAPICallFailedException;
 import jota.model.Transaction;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 public class IAMKeywordReader {
@@ -15,14 +18,49 @@ public class IAMKeywordReader {
         this.keyword = keyword;
     }
 
+    /**
+     * @see IAMReader#read(IAMIndex)
+     * @throws IotaAPICallFailedException if the node could not be queried
+     * */
     public JSONObject read(long position) {
         return generalReader.read(buildIndex(position));
     }
 
+    /**
+     * @see IAMReader#readFromSelection(IAMIndex, List)
+     * @throws IotaAPICallFailedException if the node could not be queried
+     * */
     public JSONObject readFromSelection(long position, List<Transaction> selection) {
         return generalReader.readFromSelection( buildIndex(position), selection);
     }
 
+    /**
+     * @param from       first position to read
+     * @param selections pre-fetched transactions for each position starting at 'from'
+     * @return the read JSONObject for each position in order, NULL for positions without valid packet
+     * @see IAMReader#readFromSelections(List, List)
+     * */
+    List<JSONObject> readFromSelections(long from, List<List<Transaction>> selections) {
+        List<IAMIndex> indexes = new ArrayList<>(selections.size());
+        for(int i = 0; i < selections.size(); i++)
+            indexes.add(buildIndex(from + i));
+        return generalReader.readFromSelections(indexes, selections);
+    }
+
+    /**
+     * Reads the messages of many consecutive positions. The positions are looked up in batches instead of
+     * one request per position, and the packets are verified in parallel. Batches are fetched on demand.
+     * @param from first position to read (inclusive)
+     * @param to   last position to read (exclusive)
+     * @return iterator over the message of each position in order, NULL for positions without valid packet
+     * @throws IotaAPICallFailedException if the node could not be queried (thrown by the iterator)
+     * */
+    public Iterator<JSONObject> readRange(long from, long to) {
+        if(from > to)
+            throw new IllegalArgumentException("parameter 'from' must not be greater than 'to'");
+        return new IAMRangeIterator(this, from, to);
+    }
+
     public String buildAddress(long position) {
         return generalReader.buildAddress(buildIndex(position));
     }
@@ -2,6 +2,8 @@ package iam;
 
 import org.json.JSONObject;
 
+import java.util.concurrent.CompletableFuture;
+
 public class IAMKeywordWriter {
 
     private final String keyword;
@@ -15,4 +17,8 @@ public class IAMKeywordWriter {
     public void publish(long position, JSONObject message) {
         generalWriter.write(new IAMIndex(keyword, position), message);
     }
+
+    public CompletableFuture<String> publishAsync(long position, JSONObject message, IAMWriteQueue.Priority priority, long deadlineUnixMillis) {
+        return generalWriter.writeAsync(new IAMIndex(keyword, position), message, priority, deadlineUnixMillis);
+    }
 }
\ No newline at end of file
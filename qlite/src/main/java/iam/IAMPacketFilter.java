@@ -4,21 +4,31 @@ import constants.TangleJSONConstants;
 import exceptions.IncompleteIAMChainException;
 import iam.exceptions.IllegalIAMPacketSizeException;
 import jota.model.Transaction;
-import jota.utils.TrytesConverter;
 import org.json.JSONException;
 import org.json.JSONObject;
+import tangle.JSONCodec;
 import tangle.TangleAPI;
+import tangle.TryteMessageScanner;
 import tangle.TryteTool;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Collectors;
 
 class IAMPacketFilter {
 
+    private static final ThreadLocal<char[]> fragmentBuffer = ThreadLocal.withInitial(
+            () -> new char[IAMStream.MAX_FRAGMENTS_PER_IAM_PACKET * TryteMessageScanner.CHARS_PER_FRAGMENT]);
+
     private boolean used = false;
     private final IAMReader iamReader;
     private final IAMIndex index;
     private List<Transaction> selection = null;
+    private List<Transaction> candidates;
+    private Map<String, String> fragmentsByHash;
 
     IAMPacketFilter(IAMReader iamReader, IAMIndex index) {
         this.iamReader = iamReader;
@@ -30,15 +40,39 @@ class IAMPacketFilter {
     }
 
     LinkedList<IAMPacket> findAllValidIAMPackets() {
-        preventObjectReuse();
-        fetchSelectionIfItIsNull();
-        return findAllValidIAMPacketsFromSelection();
+        fetchFragments(Collections.singletonList(this));
+        return verifyFetchedIAMPackets();
+    }
+
+    /**
+     * Does all the blocking work of the filters on the calling thread: looks up the selections which have not been
+     * set and reads the further fragments of all candidate packets with a single request. Afterwards the packets can
+     * be verified on the verification pool without any request to the node.
+     * @param filters the filters whose packets shall be verified with verifyFetchedIAMPackets() afterwards
+     * */
+    static void fetchFragments(List<IAMPacketFilter> filters) {
+        Set<String> hashes = new LinkedHashSet<>();
+        for(IAMPacketFilter filter : filters) {
+            filter.preventObjectReuse();
+            filter.fetchSelectionIfItIsNull();
+            filter.candidates = filter.filterCandidatesFromSelection();
+            for(Transaction candidate : filter.candidates)
+                hashes.addAll(listFragmentHashes(candidate));
+        }
+
+        Map<String, String> fragmentsByHash = hashes.isEmpty()
+                ? Collections.emptyMap()
+                : TangleAPI.getInstance().readTransactionsFragments(hashes.toArray(new String[0]));
+        for(IAMPacketFilter filter : filters)
+            filter.fragmentsByHash = fragmentsByHash != null ? fragmentsByHash : Collections.emptyMap();
     }
 
     private void fetchSelectionIfItIsNull() {
         String addressOfIndex = iamReader.buildAddress(index);
         if(selection == null)
             selection = TangleAPI.getInstance().findTransactionsByAddresses(new String[]{addressOfIndex});
+        if(selection == null)
+            selection = Collections.emptyList();
     }
 
     private void preventObjectReuse() {
@@ -46,80 +80,237 @@ class IAMPacketFilter {
         used = true;
     }
 
-    private LinkedList<IAMPacket> findAllValidIAMPacketsFromSelection() {
-        LinkedList<IAMPacket> validIAMPackets = new LinkedList<>();
+    /**
+     * Parses and verifies the candidate packets. Only works on what fetchFragments() has read, so it never blocks on
+     * the node and can safely run in parallel on the verification pool.
+     * @return all valid packets in the order of the selection
+     * */
+    LinkedList<IAMPacket> verifyFetchedIAMPackets() {
+        if(fragmentsByHash == null)
+            throw new IllegalStateException("fragments have not been fetched yet");
+
+        if(candidates.size() <= 1)
+            return verifySequentially();
+
+        // order of the candidates is preserved, so the result is deterministic
+        return IAMReader.getVerificationPool().submit(() -> {
+            List<IAMPacket> iamPackets = candidates.parallelStream()
+                    .map(this::parseIAMPacket)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            return dropDuplicates(iamPackets).parallelStream()
+                    .filter(iamPacket -> iamReader.isValidIAMPacket(index, iamPacket))
+                    .collect(Collectors.toCollection(LinkedList::new));
+        }).join();
+    }
+
+    /**
+     * A packet with the same message and signature as an earlier one does not have to be verified again.
+     * */
+    private static Collection<IAMPacket> dropDuplicates(List<IAMPacket> iamPackets) {
+        Map<String, IAMPacket> iamPacketsByIdentity = new LinkedHashMap<>();
+        for(IAMPacket iamPacket : iamPackets)
+            iamPacketsByIdentity.putIfAbsent(iamPacket.getIdentity(), iamPacket);
+        return iamPacketsByIdentity.values();
+    }
+
+    /**
+     * Packets are signed together with their address. Transactions on other addresses (e.g. of
+     * other streams in a preload) cannot be valid and are dropped before any verification.
+     * Re-attachments of the same root transaction are only considered once.
+     * */
+    private List<Transaction> filterCandidatesFromSelection() {
+        String addressOfIndex = iamReader.buildAddress(index);
+        Set<String> knownRootMessages = new HashSet<>();
+        List<Transaction> candidates = new ArrayList<>();
         for(Transaction transaction : selection)
-            validIAMPackets = appendTransactionIfValidIAMPacket(validIAMPackets, transaction);
-        return validIAMPackets;
+            if(addressOfIndex.equals(transaction.getAddress()) && knownRootMessages.add(transaction.getSignatureFragments()))
+                candidates.add(transaction);
+        return candidates;
     }
 
-    private LinkedList<IAMPacket> appendTransactionIfValidIAMPacket(LinkedList<IAMPacket> validIAMPackets, Transaction transaction) {
-        IAMPacket iamPacket = fetchIAMPacket(transaction);
-        if(iamReader.isValidIAMPacket(index, iamPacket))
-            validIAMPackets.add(iamPacket);
+    private LinkedList<IAMPacket> verifySequentially() {
+        LinkedList<IAMPacket> validIAMPackets = new LinkedList<>();
+        for(Transaction transaction : candidates) {
+            IAMPacket iamPacket = parseIAMPacket(transaction);
+            if(iamReader.isValidIAMPacket(index, iamPacket))
+                validIAMPackets.add(iamPacket);
+        }
         return validIAMPackets;
     }
 
-    private IAMPacket fetchIAMPacket(Transaction rootTransaction) {
+    /**
+     * @return the hashes of the further fragments announced by a root transaction, empty if the root is malformed
+     *         (it is then dropped when parsing)
+     * */
+    private static List<String> listFragmentHashes(Transaction rootTransaction) {
+        String rootTrytes = rootTransaction.getSignatureFragments();
+        List<String> hashes;
+        try {
+            if(BinaryIAMPacketCodec.isBinaryRoot(rootTrytes)) {
+                hashes = Arrays.asList(BinaryIAMPacketCodec.readHashBlock(rootTransaction.getHash(), rootTrytes));
+            } else {
+                char[] buffer = fragmentBuffer.get();
+                hashes = readHashBlock(rootTransaction, buffer, TryteMessageScanner.decodeMessage(rootTrytes, buffer, 0));
+            }
+        } catch (IllegalArgumentException e) {
+            return Collections.emptyList();
+        }
+        // a single forged hash must not fail the request of all other packets
+        for(String hash : hashes)
+            if(hash.length() != TryteTool.TRYTES_PER_HASH || !TryteTool.isTryteSequence(hash))
+                return Collections.emptyList();
+        return hashes;
+    }
+
+    private IAMPacket parseIAMPacket(Transaction rootTransaction) {
+        String rootTrytes = rootTransaction.getSignatureFragments();
         try {
-            String iamPacketJSONString = collectFragments(rootTransaction);
-            return new IAMPacket(new JSONObject(iamPacketJSONString));
-        } catch (IncompleteIAMChainException | JSONException e) {
+            if(BinaryIAMPacketCodec.isBinaryRoot(rootTrytes))
+                return BinaryIAMPacketCodec.decode(rootTransaction.getHash(), rootTrytes, this::readFragmentTrytes);
+            JSONCodec.ParsedObject iamPacketJSON = JSONCodec.parseMembers(collectFragments(rootTransaction));
+            return new IAMPacket(iamPacketJSON);
+        } catch (IncompleteIAMChainException | JSONException | IllegalArgumentException e) {
             return null;
         }
     }
 
-    private String collectFragments(Transaction rootTransaction) {
+    private String readFragmentTrytes(String hash) {
+        String fragment = fragmentsByHash.get(hash);
+        return fragment != null ? TryteMessageScanner.extractTrytes(fragment) : null;
+    }
 
-        String baseTxMsg = TrytesConverter.toString(rootTransaction.getSignatureFragments().substring(0, TryteTool.TRYTES_PER_TRANSACTION_MESSAGE -1));
-        String[] split = baseTxMsg.split("\\{", 2);
-        String hashBlock = split[0];
-        String firstFragment = "{"+split[1];
+    /**
+     * Decodes the root transaction and all further fragments into one reusable buffer of the current thread.
+     * @return a view of the IAM packet JSON in the buffer, only valid until the next call on the same thread
+     * */
+    private CharSequence collectFragments(Transaction rootTransaction) {
 
-        String[] hashes = convertHashBlockToHashes(hashBlock);
-        if(hashes.length+1 > IAMStream.MAX_FRAGMENTS_PER_IAM_PACKET)
-            throw new IllegalIAMPacketSizeException(rootTransaction.getHash());
-        return firstFragment + fetchFragmentsFromHashes(hashes);
+        char[] buffer = fragmentBuffer.get();
+        int length = TryteMessageScanner.decodeMessage(rootTransaction.getSignatureFragments(), buffer, 0);
+        List<String> hashes = readHashBlock(rootTransaction, buffer, length);
+        int jsonStart = hashes.size() * TryteTool.TRYTES_PER_HASH;
+
+        for(String hash : hashes) {
+            String fragment = fragmentsByHash.get(hash);
+            if(fragment == null)
+                throw new IncompleteIAMChainException(hash);
+            length += TryteMessageScanner.decodeMessage(fragment, buffer, length);
+        }
+
+        return CharBuffer.wrap(buffer, jsonStart, length - jsonStart);
     }
 
-    private String fetchFragmentsFromHashes(String[] hashes) {
-        StringBuilder fetchedMessage = new StringBuilder();
-        for(String hash : hashes)
-            fetchedMessage.append(TangleAPI.getInstance().readTransactionMessage(hash));
-        return fetchedMessage.toString();
+    /**
+     * The root starts with the hashes of all further fragments, followed by the beginning of the JSON.
+     * @param buffer the decoded root transaction
+     * @param length length of the decoded root transaction
+     * @return the hashes of the further fragments in order
+     * */
+    private static List<String> readHashBlock(Transaction rootTransaction, char[] buffer, int length) {
+        int jsonStart = indexOfJSONStart(buffer, length);
+        if(jsonStart < 0 || jsonStart % TryteTool.TRYTES_PER_HASH != 0)
+            throw new IllegalArgumentException("malformed iam packet root");
+        int amountOfHashes = jsonStart / TryteTool.TRYTES_PER_HASH;
+        if(amountOfHashes+1 > IAMStream.MAX_FRAGMENTS_PER_IAM_PACKET)
+            throw new IllegalIAMPacketSizeException(rootTransaction.getHash());
+
+        List<String> hashes = new ArrayList<>(amountOfHashes);
+        for(int i = 0; i < amountOfHashes; i++)
+            hashes.add(new String(buffer, i * TryteTool.TRYTES_PER_HASH, TryteTool.TRYTES_PER_HASH));
+        return hashes;
     }
 
-    private String[] convertHashBlockToHashes(String hashBlock) {
-        return hashBlock.isEmpty()
-                ? new String[]{}
-                : hashBlock.split("(?<=\\G.{"+TryteTool.TRYTES_PER_ADDRESS+"})"); // splits string into segments of length 81
+    private static int indexOfJSONStart(char[] buffer, int length) {
+        for(int i = 0; i < length; i++)
+            if(buffer[i] == '{')
+                return i;
+        return -1;
     }
 }
 
 class IAMPacket {
+
+    /**
+     * Packets of this version (or later) have been signed in their canonical form. Without a version, the
+     * message has been signed as serialized by JSONObject.toString().
+     * */
+    static final int CANONICAL_VERSION = 2;
+
+    private static final ThreadLocal<MessageDigest> sha256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    });
+
     private final JSONObject message;
+    private final String messageString;
+    private final byte[] messageDigest;
     private final String signature;
+    private final boolean canonicallySigned;
+
+    IAMPacket(JSONCodec.ParsedObject iamPacketJSON) {
+        this(iamPacketJSON.getObject().getJSONObject(TangleJSONConstants.IAM_PACKET_MESSAGE),
+                iamPacketJSON.getRawMember(TangleJSONConstants.IAM_PACKET_MESSAGE),
+                iamPacketJSON.getObject().getString(TangleJSONConstants.IAM_PACKET_SIGNATURE),
+                iamPacketJSON.getObject().optInt(TangleJSONConstants.IAM_PACKET_VERSION, 1) >= CANONICAL_VERSION);
+    }
 
-    IAMPacket(JSONObject iamPacketJSON) {
-        signature = iamPacketJSON.getString(TangleJSONConstants.IAM_PACKET_SIGNATURE);
-        message = iamPacketJSON.getJSONObject(TangleJSONConstants.IAM_PACKET_MESSAGE);
+    /**
+     * @param message           the parsed message
+     * @param messageString     the message as it appeared in the packet
+     * @param signature         the signature of the packet
+     * @param canonicallySigned TRUE if the writer signed the message in its canonical form
+     * */
+    IAMPacket(JSONObject message, String messageString, String signature, boolean canonicallySigned) {
+        this.message = message;
+        this.messageString = messageString;
+        this.signature = signature;
+        this.canonicallySigned = canonicallySigned;
+        // hashed once, comparisons only work on the digest. The signed form is hashed, not the embedded one, so re-attachments
+        // with a different formatting (whitespace, key order) are equal to the original instead of conflicting with it
+        String signedMessage = canonicallySigned ? JSONCodec.write(message) : message.toString();
+        messageDigest = sha256.get().digest(signedMessage.getBytes(StandardCharsets.UTF_8));
     }
 
     public JSONObject getMessage() {
         return message;
     }
 
+    /**
+     * @return the message as it appeared in the packet, this is what the writer signed
+     * */
+    String getMessageString() {
+        return messageString;
+    }
+
     String getSignature() {
         return signature;
     }
 
+    boolean isCanonicallySigned() {
+        return canonicallySigned;
+    }
+
+    /**
+     * @return identifies packets with the same signed message and the same signature (e.g. re-attachments)
+     * */
+    String getIdentity() {
+        return TryteTool.bytesToTrytes(messageDigest) + signature;
+    }
+
+    /**
+     * @return TRUE if both packets carry the same signed message (signatures and formatting are not compared)
+     * */
     @Override
     public boolean equals(Object o) {
-        if(o instanceof IAMPacket) {
-            IAMPacket comparePacket = (IAMPacket)o;
-            return comparePacket.getMessage().toString().equals(message.toString());
-        } else {
-            return false;
-        }
+        return o instanceof IAMPacket && MessageDigest.isEqual(messageDigest, ((IAMPacket)o).messageDigest);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(messageDigest);
     }
-}
\ No newline at end of file
+}
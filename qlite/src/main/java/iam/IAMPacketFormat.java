@@ -0,0 +1,31 @@
+package iam;
+
+/**
+ * @author microhash
+ *
+ * The formats in which IAM packets can be published. IAMReader reads all of them.
+ * @see IAMWriter#setPacketFormat(IAMPacketFormat)
+ * */
+public enum IAMPacketFormat {
+
+    /**
+     * The packet is a JSON object containing the message and the tryte encoded signature. Each character
+     * takes two trytes. The message is signed as serialized by JSONObject.toString(). Readable by all versions.
+     * */
+    JSON,
+
+    /**
+     * Like JSON, but the message is signed in its canonical form (see JSONCodec.write()), so readers verify
+     * the embedded text without serializing the message again. The packet is marked with the member
+     * "version": 2. Readers of earlier library versions reject these packets.
+     * */
+    JSON_CANONICAL,
+
+    /**
+     * Raw signature and optionally deflated message, densely packed into trytes. Usually needs considerably
+     * fewer fragments (and therefore less proof-of-work and fewer lookups) than JSON. The message is signed in
+     * its canonical form, the version in the header tells this format apart.
+     * @see BinaryIAMPacketCodec
+     * */
+    BINARY
+}
@@ -0,0 +1,104 @@
+package iam;
+
+import exceptions.IotaAPICallFailedException;
+import jota.model.Transaction;
+import org.json.JSONObject;
+import tangle.TangleAPI;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @author microhash
+ *
+ * Iterates over the messages of a range of positions of an IAMKeywordReader. The addresses of a whole batch
+ * of positions are looked up with a single request and the packets are verified in parallel. While the
+ * current batch is being consumed, the next one is already fetched in the background. The requests of a batch
+ * are sent from a reader thread, only the verification runs on the verification pool.
+ * @see IAMKeywordReader#readRange(long, long)
+ * */
+class IAMRangeIterator implements Iterator<JSONObject> {
+
+    static final int POSITIONS_PER_BATCH = 100;
+
+    private static final ExecutorService batchReader = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "qlite-range-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final IAMKeywordReader reader;
+    private final long to;
+    private long nextPosition;
+
+    private long batchStart;
+    private List<JSONObject> batch = Collections.emptyList();
+    private CompletableFuture<List<JSONObject>> nextBatch;
+
+    IAMRangeIterator(IAMKeywordReader reader, long from, long to) {
+        this.reader = reader;
+        this.to = to;
+        this.nextPosition = from;
+        this.batchStart = from;
+        nextBatch = from < to ? fetchBatchAsync(from) : null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextPosition < to;
+    }
+
+    /**
+     * @return the message at the next position, NULL if no valid packet was found there
+     * @throws IotaAPICallFailedException if the node could not be queried
+     * */
+    @Override
+    public JSONObject next() {
+        if(!hasNext())
+            throw new NoSuchElementException();
+        if(nextPosition >= batchStart + batch.size())
+            switchToNextBatch();
+        return batch.get((int)(nextPosition++ - batchStart));
+    }
+
+    private void switchToNextBatch() {
+        try {
+            batch = nextBatch.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : e;
+        }
+        batchStart = nextPosition;
+        long followingBatchStart = batchStart + batch.size();
+        nextBatch = followingBatchStart < to ? fetchBatchAsync(followingBatchStart) : null;
+    }
+
+    private CompletableFuture<List<JSONObject>> fetchBatchAsync(long start) {
+        long end = Math.min(to, start + POSITIONS_PER_BATCH);
+        return CompletableFuture.supplyAsync(() -> readBatch(start, end), batchReader);
+    }
+
+    private List<JSONObject> readBatch(long start, long end) {
+
+        String[] addresses = new String[(int)(end - start)];
+        for(int i = 0; i < addresses.length; i++)
+            addresses[i] = reader.buildAddress(start + i);
+
+        Map<String, List<Transaction>> transactionsByAddress = groupByAddress(TangleAPI.getInstance().findTransactionsByAddresses(addresses));
+
+        List<List<Transaction>> selections = new ArrayList<>(addresses.length);
+        for(String address : addresses)
+            selections.add(transactionsByAddress.getOrDefault(address, Collections.emptyList()));
+        return reader.readFromSelections(start, selections);
+    }
+
+    private static Map<String, List<Transaction>> groupByAddress(List<Transaction> transactions) {
+        Map<String, List<Transaction>> transactionsByAddress = new HashMap<>();
+        if(transactions != null)
+            for(Transaction transaction : transactions)
+                transactionsByAddress.computeIfAbsent(transaction.getAddress(), address -> new ArrayList<>()).add(transaction);
+        return transactionsByAddress;
+    }
+}
@@ -1,13 +1,18 @@
 package iam;
 
-import iam.exceptions.CorruptIAMStreamException;
-import exceptions.IncompleteIAMChainException;
+import exceptions.IotaAPICallFailedException;
+import iam.signing.SignatureScheme;
 import iam.signing.SignatureValidator;
 import jota.model.Transaction;
 import org.json.JSONObject;
 import tangle.TangleAPI;
 
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 /**
  * @author microhash
@@ -18,22 +23,26 @@ import java.util.List;
  * */
 public class IAMReader extends IAMStream {
 
+    private static ForkJoinPool verificationPool = ForkJoinPool.commonPool();
+
     private final String id;
-    private final String publicKeyTrytes;
+    private SignatureScheme signatureScheme;
+    private PublicKey publicKey;
+    private volatile boolean publicKeyLoaded = false;
 
     /**
-     * Creates the IAMReader for a specific IAMWriter ID. Fetches the according public Key.
+     * Creates the IAMReader for a specific IAMWriter ID. The according public key is fetched lazily on the first
+     * read. Prefer IAMReaderRegistry which shares readers and loads the public keys of many streams at once.
      * @param id the id of the IAMStream to read
      * */
-    public IAMReader(String id) throws CorruptIAMStreamException {
+    public IAMReader(String id) {
         this.id = id;
-        try {
-            publicKeyTrytes = TangleAPI.getInstance().readTransactionTrytes(id);
-        } catch (IncompleteIAMChainException e) {
-            throw new CorruptIAMStreamException("the iam stream root message chain could not be read completely ("+e.getMessage()+")", e);
-        }
     }
 
+    /**
+     * @see #readFromSelection(IAMIndex, List)
+     * @throws IotaAPICallFailedException if the node could not be queried
+     * */
     public JSONObject read(IAMIndex index) {
         return readFromSelection(index, null);
     }
@@ -43,30 +52,124 @@ public class IAMReader extends IAMStream {
      * @param selection resource of pre-fetched transactions for efficiency purposes, optional (set to null if not required)
      * @param index     the index for which the message shall be fetched
      * @return the read JSONObject, NULL if no transaction with a valid signature found.
+     * @throws IotaAPICallFailedException if the node could not be queried, this is NOT the same as a missing packet
      * */
     public JSONObject readFromSelection(IAMIndex index, List<Transaction> selection) {
 
+        ensurePublicKeyLoaded();
+        if(publicKey == null)
+            return null;
+
         IAMPacketFilter iamPacketFilter = new IAMPacketFilter(this, index);
         iamPacketFilter.setSelection(selection);
         List<IAMPacket> allValidIAMPackets = iamPacketFilter.findAllValidIAMPackets();
         return findConsensusMessageAmongIAMPackets(allValidIAMPackets);
     }
 
+    /**
+     * Reads the messages at many indexes at once. The public key and the fragments of all candidate packets are read
+     * with as few requests as possible from the calling thread, only the verification runs on the verification pool.
+     * @param indexes    the indexes for which the messages shall be read
+     * @param selections pre-fetched transactions for each index (same order)
+     * @return the read JSONObject for each index in order, NULL for indexes without valid packet
+     * */
+    List<JSONObject> readFromSelections(List<IAMIndex> indexes, List<List<Transaction>> selections) {
+
+        ensurePublicKeyLoaded();
+        if(publicKey == null)
+            return new ArrayList<>(Collections.nCopies(indexes.size(), (JSONObject)null));
+
+        List<IAMPacketFilter> iamPacketFilters = new ArrayList<>(indexes.size());
+        for(int i = 0; i < indexes.size(); i++) {
+            IAMPacketFilter iamPacketFilter = new IAMPacketFilter(this, indexes.get(i));
+            iamPacketFilter.setSelection(selections.get(i));
+            iamPacketFilters.add(iamPacketFilter);
+        }
+        IAMPacketFilter.fetchFragments(iamPacketFilters);
+
+        // order of the indexes is preserved
+        return verificationPool.submit(() -> iamPacketFilters.parallelStream()
+                .map(iamPacketFilter -> findConsensusMessageAmongIAMPackets(iamPacketFilter.verifyFetchedIAMPackets()))
+                .collect(Collectors.toList())
+        ).join();
+    }
+
     public String getID() {
         return id;
     }
 
+    /**
+     * @return the signature scheme of the stream, NULL if the root transaction is unknown or announces an unsupported scheme
+     * @throws IotaAPICallFailedException if the node could not be queried
+     * */
+    public SignatureScheme getSignatureScheme() {
+        ensurePublicKeyLoaded();
+        return signatureScheme;
+    }
+
+    boolean isPublicKeyLoaded() {
+        return publicKeyLoaded;
+    }
+
+    private void ensurePublicKeyLoaded() {
+        if(!publicKeyLoaded)
+            loadPublicKey(TangleAPI.getInstance().readTransactionTrytes(id));
+    }
+
+    /**
+     * Decodes the public key from the stream's root transaction. Decoded once here instead of for every single
+     * packet verified. A root which could not be found is not remembered, so a later read will try again.
+     * @param rootTrytes message trytes of the root transaction, NULL if not found
+     * */
+    synchronized void loadPublicKey(String rootTrytes) {
+        if(publicKeyLoaded || rootTrytes == null)
+            return;
+        try {
+            signatureScheme = SignatureScheme.fromRootTrytes(rootTrytes);
+            publicKey = SignatureValidator.parsePublicKey(signatureScheme, SignatureScheme.extractPublicKeyTrytes(rootTrytes));
+        } catch (IllegalArgumentException e) {
+            // unsupported scheme, none of the packets can be verified
+            signatureScheme = null;
+        }
+        publicKeyLoaded = true;
+    }
+
+    /**
+     * Changes the pool on which candidate IAM packets are verified in parallel. Only parsing and signature
+     * verification run on this pool, all requests to the node are sent before from the reading thread.
+     * @param verificationPool the pool to use, ForkJoinPool.commonPool() by default
+     * */
+    public static void setVerificationPool(ForkJoinPool verificationPool) {
+        if(verificationPool == null)
+            throw new NullPointerException("parameter 'verificationPool' is null");
+        IAMReader.verificationPool = verificationPool;
+    }
+
+    static ForkJoinPool getVerificationPool() {
+        return verificationPool;
+    }
+
     private JSONObject findConsensusMessageAmongIAMPackets(List<IAMPacket> validIAMPackets) {
-        IAMPacket consensusPacket = validIAMPackets.size() > 0 ? validIAMPackets.get(0) : null;
+        if(validIAMPackets.isEmpty())
+            return null;
+        IAMPacket consensusPacket = validIAMPackets.get(0);
+        // compares the message digests, the messages are not serialized again
         for(IAMPacket iamPacket : validIAMPackets)
             if(!iamPacket.equals(consensusPacket))
-                consensusPacket = null;
-        return consensusPacket != null ? consensusPacket.getMessage() : null;
+                return null;
+        return consensusPacket.getMessage();
     }
 
     boolean isValidIAMPacket(IAMIndex index, IAMPacket iamPacket) {
         if(iamPacket == null)
             return false;
-        return SignatureValidator.validate(publicKeyTrytes, iamPacket.getSignature(), buildStringToSignForIAMPacket(index, iamPacket.getMessage()));
+        if(SignatureValidator.validate(signatureScheme, publicKey, iamPacket.getSignature(), buildStringToSignForIAMPacket(index, iamPacket.getMessageString())))
+            return true;
+        // writers which embedded the message differently from how they signed it (only possible for legacy packets)
+        if(iamPacket.isCanonicallySigned())
+            return false;
+        String reserializedMessage = iamPacket.getMessage().toString();
+        return !reserializedMessage.equals(iamPacket.getMessageString())
+                && SignatureValidator.validate(signatureScheme, publicKey, iamPacket.getSignature(), buildStringToSignForIAMPacket(index, reserializedMessage));
     }
 }
@@ -0,0 +1,77 @@
+package iam;
+
+import exceptions.IotaAPICallFailedException;
+import tangle.TangleAPI;
+import tangle.TryteTool;
+
+import java.util.*;
+
+/**
+ * @author microhash
+ *
+ * The IAMReaderRegistry shares IAMReaders process-wide, keyed by their IAM stream ID. Creating a reader
+ * does not require any tangle request, the public key is loaded lazily on the first read. prefetch()
+ * loads the public keys of many streams (e.g. all oracles of an assembly) with one single request.
+ * */
+public class IAMReaderRegistry {
+
+    private static final int MAX_REGISTERED_READERS = 4096;
+
+    private static final IAMReaderRegistry instance = new IAMReaderRegistry();
+
+    /**
+     * Evicts the least recently used reader when full. Evicted readers remain usable for whoever still holds them.
+     * */
+    private final Map<String, IAMReader> readersByID = Collections.synchronizedMap(new LinkedHashMap<String, IAMReader>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, IAMReader> eldest) {
+            return size() > MAX_REGISTERED_READERS;
+        }
+    });
+
+    public static IAMReaderRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param id the id of the IAMStream to read
+     * @return the shared reader of the IAM stream
+     * */
+    public IAMReader get(String id) {
+        if(id == null)
+            throw new NullPointerException("parameter 'id' is null");
+        return readersByID.computeIfAbsent(id, IAMReader::new);
+    }
+
+    /**
+     * Loads the public keys of all streams whose key is not known yet in a single request.
+     * IDs which are not valid transaction hashes are skipped, reading them fails as usual.
+     * @param ids the ids of the IAMStreams which will be read soon
+     * */
+    public void prefetch(Collection<String> ids) {
+
+        Map<String, IAMReader> readersToLoad = new LinkedHashMap<>();
+        for(String id : ids) {
+            IAMReader reader = get(id);
+            if(!reader.isPublicKeyLoaded() && id.length() == TryteTool.TRYTES_PER_HASH && TryteTool.isTryteSequence(id))
+                readersToLoad.put(id, reader);
+        }
+
+        if(readersToLoad.isEmpty())
+            return;
+
+        Map<String, String> rootTrytesByID;
+        try {
+            rootTrytesByID = TangleAPI.getInstance().readTransactionsTrytes(readersToLoad.keySet().toArray(new String[0]));
+        } catch (IotaAPICallFailedException e) {
+            // only an optimization, each reader loads its key on its first read instead
+            e.printStackTrace();
+            return;
+        }
+        if(rootTrytesByID == null)
+            return;
+
+        for(Map.Entry<String, IAMReader> entry : readersToLoad.entrySet())
+            entry.getValue().loadPublicKey(rootTrytesByID.get(entry.getKey()));
+    }
+}
@@ -26,7 +26,16 @@ public abstract class IAMStream {
      * @return string that is required to be signed in the signature field of an IAM packet
      * */
     String buildStringToSignForIAMPacket(IAMIndex index, JSONObject message) {
-        return buildAddress(index) + String.valueOf(message);
+        return buildStringToSignForIAMPacket(index, String.valueOf(message));
+    }
+
+    /**
+     * @param index         index position to which the message is attached in the IAM stream
+     * @param messageString the custom message of the IAM packet, already serialized
+     * @return string that is required to be signed in the signature field of an IAM packet
+     * */
+    String buildStringToSignForIAMPacket(IAMIndex index, String messageString) {
+        return buildAddress(index) + messageString;
     }
 
     /**
@@ -0,0 +1,226 @@
+package iam;
+
+import org.json.JSONObject;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author microhash
+ *
+ * The IAMWriteQueue performs IAMWriter.write() in the background (write-behind), so callers don't block
+ * during signing, proof-of-work and attachment. It can be shared by all IAMWriters of a node:
+ *
+ * - The queue is bounded. NON_CRITICAL writes (e.g. epoch links) are only accepted while the queue is
+ *   at most half full, and queued ones are shed to make room for CRITICAL writes.
+ * - Every write has a deadline. Writes which could not be started before their deadline are dropped.
+ * - Writes to the same index of the same stream are performed in the order they were submitted.
+ *
+ * Rejected, shed and expired writes complete their future exceptionally. The counters are
+ * meant for monitoring the backpressure of a node.
+ * @see IAMWriter#setWriteQueue(IAMWriteQueue)
+ * */
+public class IAMWriteQueue {
+
+    private static final int DEFAULT_THREADS = 4;
+
+    private final int capacity;
+    private final ExecutorService executor;
+
+    private final Map<String, CompletableFuture<Void>> lastWriteByIndex = new HashMap<>();
+    private final Deque<PendingWrite> queuedNonCriticalWrites = new ArrayDeque<>();
+    private int pendingWrites = 0;
+
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong shedCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong totalLatencyMillis = new AtomicLong();
+
+    /**
+     * @param capacity maximum amount of writes queued or in progress at the same time
+     * */
+    public IAMWriteQueue(int capacity) {
+        this(capacity, Executors.newFixedThreadPool(DEFAULT_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "qlite-iam-write");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * @param capacity maximum amount of writes queued or in progress at the same time
+     * @param executor executor performing the writes, its amount of threads limits the concurrent writes
+     * */
+    public IAMWriteQueue(int capacity, ExecutorService executor) {
+        if(capacity < 1)
+            throw new IllegalArgumentException("parameter 'capacity' must be positive");
+        if(executor == null)
+            throw new NullPointerException("parameter 'executor' is null");
+        this.capacity = capacity;
+        this.executor = executor;
+    }
+
+    /**
+     * Queues a write.
+     * @param writer             the writer to write with
+     * @param index              the index at which the message shall be attached
+     * @param message            the message to attach
+     * @param priority           NON_CRITICAL writes are shed first when the queue runs full
+     * @param deadlineUnixMillis the write is dropped if it could not be started until then
+     * @return future of the hash of the sent transaction, completes exceptionally with RejectedExecutionException
+     *         if the write was rejected or shed, with TimeoutException if the deadline passed
+     * */
+    public CompletableFuture<String> submit(IAMWriter writer, IAMIndex index, JSONObject message, Priority priority, long deadlineUnixMillis) {
+
+        PendingWrite write = new PendingWrite(writer, index, message, priority, deadlineUnixMillis);
+
+        synchronized (this) {
+            if(!makeRoomFor(write)) {
+                shedCount.incrementAndGet();
+                write.future.completeExceptionally(new RejectedExecutionException("write queue is full"));
+                return write.future;
+            }
+
+            pendingWrites++;
+            if(priority == Priority.NON_CRITICAL)
+                queuedNonCriticalWrites.addLast(write);
+
+            // writes to the same index wait for their predecessor to finish (successfully or not)
+            String key = writer.getID() + ":" + index;
+            CompletableFuture<Void> previousWrite = lastWriteByIndex.getOrDefault(key, CompletableFuture.completedFuture(null));
+            CompletableFuture<Void> thisWrite = previousWrite.handle((ignored, t) -> null).thenRunAsync(() -> perform(write), executor);
+            lastWriteByIndex.put(key, thisWrite);
+            thisWrite.whenComplete((ignored, t) -> {
+                synchronized (IAMWriteQueue.this) {
+                    lastWriteByIndex.remove(key, thisWrite);
+                }
+            });
+        }
+
+        return write.future;
+    }
+
+    private boolean makeRoomFor(PendingWrite write) {
+        if(write.priority == Priority.NON_CRITICAL)
+            return pendingWrites < capacity / 2 + capacity % 2;
+        while (pendingWrites >= capacity) {
+            PendingWrite shedWrite = queuedNonCriticalWrites.pollFirst();
+            if(shedWrite == null)
+                return false;
+            if(shedWrite.claim()) {
+                pendingWrites--;
+                shedCount.incrementAndGet();
+                shedWrite.future.completeExceptionally(new RejectedExecutionException("write has been shed in favour of a critical write"));
+            }
+        }
+        return true;
+    }
+
+    private void perform(PendingWrite write) {
+
+        if(!write.claim())
+            return; // has been shed
+
+        String hash = null;
+        Throwable failure = null;
+        try {
+            if(System.currentTimeMillis() > write.deadlineUnixMillis) {
+                expiredCount.incrementAndGet();
+                failure = new TimeoutException("write to index " + write.index + " could not be started before its deadline");
+            } else {
+                hash = write.writer.write(write.index, write.message);
+                completedCount.incrementAndGet();
+                totalLatencyMillis.addAndGet(System.currentTimeMillis() - write.submittedUnixMillis);
+            }
+        } catch (Throwable t) {
+            failedCount.incrementAndGet();
+            failure = t;
+        }
+
+        // released before the future completes, so whoever waits for it sees the write as no longer pending
+        synchronized (this) {
+            pendingWrites--;
+            queuedNonCriticalWrites.remove(write);
+        }
+
+        if(failure != null)
+            write.future.completeExceptionally(failure);
+        else
+            write.future.complete(hash);
+    }
+
+    /**
+     * @return amount of writes queued or in progress
+     * */
+    public synchronized int getPendingCount() {
+        return pendingWrites;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return amount of writes rejected because the queue was full or shed in favour of critical writes
+     * */
+    public long getShedCount() {
+        return shedCount.get();
+    }
+
+    /**
+     * @return amount of writes dropped because they could not be started before their deadline
+     * */
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    /**
+     * @return mean time from submission to attachment of all completed writes in milliseconds
+     * */
+    public double getAverageLatencyMillis() {
+        long completed = completedCount.get();
+        return completed == 0 ? 0 : (double)totalLatencyMillis.get() / completed;
+    }
+
+    public enum Priority {
+        CRITICAL, NON_CRITICAL
+    }
+
+    private static class PendingWrite {
+
+        private final IAMWriter writer;
+        private final IAMIndex index;
+        private final JSONObject message;
+        private final Priority priority;
+        private final long deadlineUnixMillis;
+        private final long submittedUnixMillis = System.currentTimeMillis();
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+
+        PendingWrite(IAMWriter writer, IAMIndex index, JSONObject message, Priority priority, long deadlineUnixMillis) {
+            this.writer = writer;
+            this.index = index;
+            this.message = message;
+            this.priority = priority;
+            this.deadlineUnixMillis = deadlineUnixMillis;
+        }
+
+        /**
+         * @return TRUE if the caller may perform or shed the write, FALSE if someone else already did
+         * */
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+}
@@ -4,14 +4,22 @@ import constants.TangleJSONConstants;
 import exceptions.IotaAPICallFailedException;
 import iam.exceptions.CorruptIAMStreamException;
 import iam.exceptions.IAMPacketSizeLimitExceeded;
+import iam.signing.SignatureScheme;
 import iam.signing.Signer;
+import jota.utils.TrytesConverter;
 import org.json.JSONObject;
+import tangle.AsyncTangleAPI;
+import tangle.JSONCodec;
 import tangle.TangleAPI;
 import tangle.TryteTool;
 
 import java.security.InvalidParameterException;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * @author microhash
@@ -23,17 +31,30 @@ import java.security.spec.InvalidKeySpecException;
 public class IAMWriter extends IAMStream {
 
     private final String id;
-    private final Signer signer = createSigner();
+    private final Signer signer;
+    private IAMPacketFormat packetFormat = IAMPacketFormat.JSON;
+    private IAMWriteQueue writeQueue = null;
 
     private static final int MAX_CHARS_PER_FRAGMENT = TryteTool.TRYTES_PER_TRANSACTION_MESSAGE / TryteTool.TRYTES_PER_BYTE; // = BYTES PER TRANSACTION
 
     /**
-     * Creates a new key pair and attaches the public key to the tangle.
+     * Creates a new key pair of the legacy signature scheme and attaches the public key to the tangle.
      * The resulting transaction hash serves as ID for the IAM Stream.
      * */
     public IAMWriter() {
-        String publicKeyTrytes = signer.getPublicKeyTrytes();
-        id = TangleAPI.getInstance().sendTrytes(publicKeyTrytes);
+        this(SignatureScheme.DSA_SHA1);
+    }
+
+    /**
+     * Creates a new key pair and attaches the public key together with the signature scheme to the tangle.
+     * The resulting transaction hash serves as ID for the IAM Stream.
+     * @param signatureScheme the signature scheme of the new IAM stream
+     * @throws CorruptIAMStreamException if the scheme is not available in this runtime
+     * @throws IotaAPICallFailedException if the root transaction could not be sent
+     * */
+    public IAMWriter(SignatureScheme signatureScheme) {
+        signer = createSigner(signatureScheme);
+        id = TangleAPI.getInstance().sendTrytes(signatureScheme.buildRootTrytes(signer.getPublicKeyTrytes()));
     }
 
     /**
@@ -44,11 +65,14 @@ public class IAMWriter extends IAMStream {
      * @throws InvalidParameterException if id is not tryte sequence of length 81
      * @throws CorruptIAMStreamException if cannot find root transaction (transaction whose hash is the id)
      * @throws InvalidKeySpecException   if key specification is invalid
+     * @throws IotaAPICallFailedException if the node could not be queried
      * */
     public IAMWriter(String id, String privateKeyTrytes) throws InvalidKeySpecException {
         validateID(id = id.toUpperCase());
         this.id = id;
-        initSignerKeys(id, privateKeyTrytes);
+        String rootTrytes = readRootTrytes(id);
+        signer = createSigner(readSignatureScheme(rootTrytes));
+        signer.loadKeysFromTrytes(privateKeyTrytes, SignatureScheme.extractPublicKeyTrytes(rootTrytes));
     }
 
     /**
@@ -58,13 +82,65 @@ public class IAMWriter extends IAMStream {
      * @param message the jsonObject to attach, .toString() has to return an ASCII encoded string
      * @return hash of sent iota transaction
      * @throws InvalidParameterException if index is negative
+     * @throws IotaAPICallFailedException if the packet could not be sent
      * */
     public String write(IAMIndex index, JSONObject message) throws IotaAPICallFailedException {
-        if(!TryteTool.isAsciiString(message.toString()))
+        // serialized once, the packet contains the message exactly as it was signed
+        String messageString = packetFormat == IAMPacketFormat.JSON ? message.toString() : JSONCodec.write(message);
+        if(!TryteTool.isAsciiString(messageString))
             throw new InvalidParameterException("parameter message contains non-ascii characters");
-        String signature = generateIAMPacketSignature(index, message);
-        JSONObject iamPacket = buildIAMPacket(signature, message);
-        return publishIAMPacketInFragments(iamPacket.toString(), buildAddress(index));
+        String signature = signer.sign(buildStringToSignForIAMPacket(index, messageString));
+        if(packetFormat == IAMPacketFormat.BINARY)
+            return publishBinaryIAMPacket(messageString, TryteTool.trytesToBytes(signature), buildAddress(index));
+        return publishIAMPacketInFragments(buildIAMPacketString(signature, messageString, packetFormat == IAMPacketFormat.JSON_CANONICAL), buildAddress(index));
+    }
+
+    /**
+     * Writes in the background if a write queue is set (see setWriteQueue()), otherwise like write().
+     * @param index              the index at which the message shall be attached in the IAM stream
+     * @param message            the jsonObject to attach, .toString() has to return an ASCII encoded string
+     * @param priority           NON_CRITICAL writes are shed first when the write queue runs full
+     * @param deadlineUnixMillis the write is dropped if it could not be started until then
+     * @return future of the hash of the sent iota transaction
+     * @see IAMWriteQueue#submit(IAMWriter, IAMIndex, JSONObject, IAMWriteQueue.Priority, long)
+     * */
+    public CompletableFuture<String> writeAsync(IAMIndex index, JSONObject message, IAMWriteQueue.Priority priority, long deadlineUnixMillis) {
+        if(writeQueue != null)
+            return writeQueue.submit(this, index, message, priority, deadlineUnixMillis);
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        try {
+            future.complete(write(index, message));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Enables the write-behind mode for writeAsync(). The queue can be shared by multiple writers.
+     * @param writeQueue the queue performing the writes, NULL to write synchronously
+     * */
+    public void setWriteQueue(IAMWriteQueue writeQueue) {
+        this.writeQueue = writeQueue;
+    }
+
+    public IAMWriteQueue getWriteQueue() {
+        return writeQueue;
+    }
+
+    /**
+     * Changes the format in which IAM packets are published. Readers of earlier library versions can only read IAMPacketFormat.JSON.
+     * @param packetFormat the format of all packets written from now on
+     * */
+    public void setPacketFormat(IAMPacketFormat packetFormat) {
+        if(packetFormat == null)
+            throw new NullPointerException("parameter 'packetFormat' is null");
+        this.packetFormat = packetFormat;
+    }
+
+    public IAMPacketFormat getPacketFormat() {
+        return packetFormat;
     }
 
     public String getID() {
@@ -75,11 +151,23 @@ public class IAMWriter extends IAMStream {
         return signer.getPrivateKeyTrytes();
     }
 
-    private void initSignerKeys(String id, String privateKeyTrytes) throws InvalidKeySpecException {
-        String publicKeyTrytes = TangleAPI.getInstance().readTransactionTrytes(id);
-        if(publicKeyTrytes == null)
+    public SignatureScheme getSignatureScheme() {
+        return signer.getScheme();
+    }
+
+    private static String readRootTrytes(String id) {
+        String rootTrytes = TangleAPI.getInstance().readTransactionTrytes(id);
+        if(rootTrytes == null)
             throw new CorruptIAMStreamException("failed loading base transaction for IAM stream: '"+id+"'", null);
-        signer.loadKeysFromTrytes(privateKeyTrytes, publicKeyTrytes);
+        return rootTrytes;
+    }
+
+    private static SignatureScheme readSignatureScheme(String rootTrytes) {
+        try {
+            return SignatureScheme.fromRootTrytes(rootTrytes);
+        } catch (IllegalArgumentException e) {
+            throw new CorruptIAMStreamException(e.getMessage(), e);
+        }
     }
 
     private static void validateID(String id) {
@@ -91,38 +179,62 @@ public class IAMWriter extends IAMStream {
             throw new InvalidParameterException("parameter id is required to be exactly 81 trytes long");
     }
 
-    private static Signer createSigner() {
+    private static Signer createSigner(SignatureScheme signatureScheme) {
         try {
-            return new Signer();
+            return new Signer(signatureScheme);
         } catch (NoSuchAlgorithmException e) {
             throw new CorruptIAMStreamException("failed initializing signature object", e);
         }
     }
 
-    private String generateIAMPacketSignature(IAMIndex index, JSONObject message) {
-        String stringToSign = buildStringToSignForIAMPacket(index, message);
-        return signer.sign(stringToSign);
-    }
-
-    private JSONObject buildIAMPacket(String signature, JSONObject message) {
-        JSONObject iamPacket = new JSONObject();
-        iamPacket.put(TangleJSONConstants.IAM_PACKET_MESSAGE,  message);
-        iamPacket.put(TangleJSONConstants.IAM_PACKET_SIGNATURE, signature);
-        return iamPacket;
+    /**
+     * Builds the IAM packet in its canonical form (see JSONCodec.write()) around the already serialized message.
+     * @param canonicallySigned marks the packet for readers which verify the canonical form (IAMPacketFormat.JSON_CANONICAL)
+     * */
+    private static String buildIAMPacketString(String signature, String messageString, boolean canonicallySigned) {
+        return "{" + JSONObject.quote(TangleJSONConstants.IAM_PACKET_MESSAGE) + ":" + messageString
+                + "," + JSONObject.quote(TangleJSONConstants.IAM_PACKET_SIGNATURE) + ":" + JSONObject.quote(signature)
+                + (canonicallySigned ? "," + JSONObject.quote(TangleJSONConstants.IAM_PACKET_VERSION) + ":" + IAMPacket.CANONICAL_VERSION : "")
+                + "}";
     }
 
     private static String publishIAMPacketInFragments(String iamPacketString, String address) {
 
         String[] fragments = fragmentIAMPacket(iamPacketString);
-        StringBuilder hashBlock = new StringBuilder();
+        for(int i = 1; i < fragments.length; i++)
+            fragments[i] = TrytesConverter.toTrytes(fragments[i]);
+        fragments[0] = publishFragmentsConcurrently(fragments) + fragments[0];
+        return TangleAPI.getInstance().sendMessage(address, fragments[0]);
+    }
 
-        for(int i = fragments.length-1; i >= 1; i--) {
-            String hash = TangleAPI.getInstance().sendMessage(fragments[i]);
-            hashBlock.insert(0, hash);
-        }
+    private static String publishBinaryIAMPacket(String messageString, byte[] signature, String address) {
+        String[] fragments = BinaryIAMPacketCodec.encodeInFragments(messageString, signature);
+        String rootFragment = BinaryIAMPacketCodec.buildRootFragment(fragments[0], publishFragmentsConcurrently(fragments));
+        return TangleAPI.getInstance().sendTrytes(address, rootFragment);
+    }
 
-        fragments[0] = hashBlock + fragments[0];
-        return TangleAPI.getInstance().sendMessage(address, fragments[0]);
+    /**
+     * Publishes all fragments except the first one. The fragments are independent of each other,
+     * so they can be attached at the same time.
+     * @param fragments all fragments of the IAM packet, all except the first one encoded in trytes
+     * @return hash block (hashes of the published fragments in order)
+     * */
+    private static String publishFragmentsConcurrently(String[] fragments) {
+
+        List<CompletableFuture<String>> hashFutures = new LinkedList<>();
+        for(int i = 1; i < fragments.length; i++)
+            hashFutures.add(AsyncTangleAPI.getInstance().sendTrytes(fragments[i]));
+
+        StringBuilder hashBlock = new StringBuilder();
+        try {
+            for(CompletableFuture<String> hashFuture : hashFutures)
+                hashBlock.append(hashFuture.join());
+        } catch (CompletionException e) {
+            for(CompletableFuture<String> hashFuture : hashFutures)
+                hashFuture.cancel(true);
+            throw new IotaAPICallFailedException(e.getCause());
+        }
+        return hashBlock.toString();
     }
 
     private static String[] fragmentIAMPacket(String iamPacketString) {
@@ -0,0 +1,157 @@
+package iam.signing;
+
+import java.security.*;
+
+/**
+ * @author microhash
+ *
+ * The signature scheme of an IAM stream. Streams using a scheme other than the legacy one announce it
+ * in their root transaction: '9' followed by the scheme identifier precedes the public key. Legacy roots
+ * consist of the public key only, which never contains a '9' (see TryteTool.bytesToTrytes()).
+ * */
+public enum SignatureScheme {
+
+    /**
+     * The original 1024-bit DSA with SHA1. For compatibility its signatures only cover a run of zero bytes
+     * whose length is the sum of the message bytes, so only ASCII messages are supported.
+     * */
+    DSA_SHA1('A', SignatureConstants.KEY_PAIR_GENERATOR_ALGORITHM, SignatureConstants.SIGNATURE_ALGORITHM, SignatureConstants.KEY_SIZE) {
+        @Override
+        void update(Signature signature, byte[] message) throws SignatureException {
+            long amountOfZeros = 0;
+            for(byte b : message) {
+                if(b < 0)
+                    throw new SignatureException("legacy signature scheme does not support non-ascii messages");
+                amountOfZeros += b;
+            }
+            // same digest as feeding the zeros byte by byte, but with far fewer calls
+            for(; amountOfZeros > 0; amountOfZeros -= ZEROS.length)
+                signature.update(ZEROS, 0, (int)Math.min(amountOfZeros, ZEROS.length));
+        }
+    },
+
+    /**
+     * Ed25519 (RFC 8032). Part of the JDK from version 15 on, older runtimes require a security provider
+     * supporting it (e.g. BouncyCastle 1.60+) on the classpath.
+     * */
+    ED25519('B', "Ed25519", "Ed25519", 0) {
+        @Override
+        void update(Signature signature, byte[] message) throws SignatureException {
+            signature.update(message);
+        }
+    };
+
+    public static final char HEADER_MARKER = '9';
+
+    private static final byte[] ZEROS = new byte[4096];
+    private static final String FALLBACK_PROVIDER_CLASS = "org.bouncycastle.jce.provider.BouncyCastleProvider";
+    private static Provider fallbackProvider;
+
+    private final char identifier;
+    private final String keyPairGeneratorAlgorithm;
+    private final String signatureAlgorithm;
+    private final int keySize;
+
+    SignatureScheme(char identifier, String keyPairGeneratorAlgorithm, String signatureAlgorithm, int keySize) {
+        this.identifier = identifier;
+        this.keyPairGeneratorAlgorithm = keyPairGeneratorAlgorithm;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.keySize = keySize;
+    }
+
+    /**
+     * Feeds the message into an initialized signature object.
+     * */
+    abstract void update(Signature signature, byte[] message) throws SignatureException;
+
+    /**
+     * @param publicKeyTrytes the public key encoded in trytes (encoder: TryteTool.bytesToTrytes())
+     * @return the content of the root transaction of an IAM stream using this scheme
+     * */
+    public String buildRootTrytes(String publicKeyTrytes) {
+        return this == DSA_SHA1 ? publicKeyTrytes : "" + HEADER_MARKER + identifier + publicKeyTrytes;
+    }
+
+    /**
+     * @param rootTrytes content of the root transaction of an IAM stream
+     * @return the scheme used by the IAM stream
+     * @throws IllegalArgumentException if the root announces an unknown scheme
+     * */
+    public static SignatureScheme fromRootTrytes(String rootTrytes) {
+        if(!hasHeader(rootTrytes))
+            return DSA_SHA1;
+        for(SignatureScheme scheme : values())
+            if(scheme.identifier == rootTrytes.charAt(1))
+                return scheme;
+        throw new IllegalArgumentException("unknown signature scheme '"+rootTrytes.charAt(1)+"'");
+    }
+
+    /**
+     * @param rootTrytes content of the root transaction of an IAM stream
+     * @return the public key encoded in trytes (encoder: TryteTool.bytesToTrytes())
+     * */
+    public static String extractPublicKeyTrytes(String rootTrytes) {
+        return hasHeader(rootTrytes) ? rootTrytes.substring(2) : rootTrytes;
+    }
+
+    private static boolean hasHeader(String rootTrytes) {
+        return rootTrytes != null && rootTrytes.length() >= 2 && rootTrytes.charAt(0) == HEADER_MARKER;
+    }
+
+    /**
+     * @return TRUE if this runtime can sign and verify with this scheme
+     * */
+    public boolean isAvailable() {
+        try {
+            createSignature();
+            return true;
+        } catch (NoSuchAlgorithmException e) {
+            return false;
+        }
+    }
+
+    Signature createSignature() throws NoSuchAlgorithmException {
+        try {
+            return Signature.getInstance(signatureAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            return Signature.getInstance(signatureAlgorithm, requireFallbackProvider(e));
+        }
+    }
+
+    KeyFactory createKeyFactory() throws NoSuchAlgorithmException {
+        try {
+            return KeyFactory.getInstance(keyPairGeneratorAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            return KeyFactory.getInstance(keyPairGeneratorAlgorithm, requireFallbackProvider(e));
+        }
+    }
+
+    KeyPair generateKeyPair() throws NoSuchAlgorithmException {
+        KeyPairGenerator keyGen;
+        try {
+            keyGen = KeyPairGenerator.getInstance(keyPairGeneratorAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            keyGen = KeyPairGenerator.getInstance(keyPairGeneratorAlgorithm, requireFallbackProvider(e));
+        }
+        if(keySize > 0)
+            keyGen.initialize(keySize, SecureRandom.getInstance(SignatureConstants.SECURE_RANDOM_ALGORITHM));
+        return keyGen.generateKeyPair();
+    }
+
+    private static synchronized Provider requireFallbackProvider(NoSuchAlgorithmException cause) throws NoSuchAlgorithmException {
+        if(fallbackProvider == null) {
+            try {
+                // exceptions of the constructor are wrapped in an InvocationTargetException instead of being rethrown unchecked
+                fallbackProvider = (Provider)Class.forName(FALLBACK_PROVIDER_CLASS).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+                cause.addSuppressed(e);
+                throw cause;
+            }
+        }
+        return fallbackProvider;
+    }
+
+    public char getIdentifier() {
+        return identifier;
+    }
+}
@@ -5,65 +5,118 @@ import tangle.TryteTool;
 import java.security.*;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.*;
 
 public enum SignatureValidator {;
 
-    private static final KeyFactory keyFactory;
+    private static final int MAX_CACHED_PUBLIC_KEYS = 1024;
 
-    static {
-        try {
-            keyFactory = KeyFactory.getInstance(SignatureConstants.KEY_PAIR_GENERATOR_ALGORITHM);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
+    private static final Map<SignatureScheme, KeyFactory> keyFactories = new EnumMap<>(SignatureScheme.class);
+
+    /**
+     * Signature objects are expensive to create but cannot be shared between threads.
+     * */
+    private static final ThreadLocal<Map<SignatureScheme, Signature>> verifiers = ThreadLocal.withInitial(() -> new EnumMap<>(SignatureScheme.class));
+
+    /**
+     * Decoded public keys mapped by scheme identifier and tryte encoding. Evicts the least recently used key when full.
+     * */
+    private static final Map<String, PublicKey> publicKeyCache = Collections.synchronizedMap(new LinkedHashMap<String, PublicKey>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PublicKey> eldest) {
+            return size() > MAX_CACHED_PUBLIC_KEYS;
         }
-    }
+    });
 
     /**
-     * Verifies the correctness of a signature for a certain message and public key.
+     * Verifies the correctness of a signature for a certain message and public key of the legacy signature scheme.
      * @param publicKeyTrytes the public key encoded in trytes (encoder: TryteTool.bytesToTrytes())
      * @param signatureTrytes the signature encoded in trytes (encoder: TryteTool.bytesToTrytes())
      * @param message         the message for which the signature was created
      * @return TRUE = valid/correct signature, FALSE = invalid/incorrect signature
      * */
     public static boolean validate(String publicKeyTrytes, String signatureTrytes, String message) {
+        return validate(SignatureScheme.DSA_SHA1, parsePublicKey(SignatureScheme.DSA_SHA1, publicKeyTrytes), signatureTrytes, message);
+    }
 
-        byte[] publicKeyBytes = TryteTool.trytesToBytes(publicKeyTrytes);
-        byte[] signatureBytes = TryteTool.trytesToBytes(signatureTrytes);
-
-        X509EncodedKeySpec publicKeySpec = new X509EncodedKeySpec(publicKeyBytes);
-        PublicKey publicKey;
+    /**
+     * Verifies the correctness of a signature for a certain message and an already decoded public key.
+     * Prefer this over validate(String, String, String) when verifying many signatures of the same key.
+     * @param scheme          the signature scheme of the public key
+     * @param publicKey       the decoded public key (see parsePublicKey())
+     * @param signatureTrytes the signature encoded in trytes (encoder: TryteTool.bytesToTrytes())
+     * @param message         the message for which the signature was created
+     * @return TRUE = valid/correct signature, FALSE = invalid/incorrect signature or public key is NULL
+     * */
+    public static boolean validate(SignatureScheme scheme, PublicKey publicKey, String signatureTrytes, String message) {
 
-        try {
-            publicKey =  keyFactory.generatePublic(publicKeySpec);;
-        } catch (InvalidKeySpecException e) {
+        if(publicKey == null)
             return false;
-        }
-
-        Signature signature;
 
-        try {
-            signature = Signature.getInstance(SignatureConstants.SIGNATURE_ALGORITHM);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
+        byte[] signatureBytes = TryteTool.trytesToBytes(signatureTrytes);
 
         try {
+            Signature signature = getVerifier(scheme);
             signature.initVerify(publicKey);
-        } catch (InvalidKeyException e) {
+            scheme.update(signature, message.getBytes());
+            return signature.verify(signatureBytes);
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
             e.printStackTrace();
             return false;
+        } catch (SignatureException e) {
+            return false;
         }
+    }
+
+    /**
+     * Decodes a public key. Results are cached, so decoding the same key again is cheap.
+     * @param scheme          the signature scheme of the public key
+     * @param publicKeyTrytes the public key encoded in trytes (encoder: TryteTool.bytesToTrytes())
+     * @return the decoded public key, NULL if the trytes do not encode a valid public key
+     * */
+    public static PublicKey parsePublicKey(SignatureScheme scheme, String publicKeyTrytes) {
 
-        byte[] msgBytes = message.getBytes();
-        byte[] buffer = new byte[SignatureConstants.KEY_SIZE];
+        if(publicKeyTrytes == null)
+            return null;
+
+        String cacheKey = scheme.getIdentifier() + publicKeyTrytes;
+        PublicKey publicKey = publicKeyCache.get(cacheKey);
+        if(publicKey != null)
+            return publicKey;
+
+        X509EncodedKeySpec publicKeySpec = new X509EncodedKeySpec(TryteTool.trytesToBytes(publicKeyTrytes));
 
         try {
-            for (byte b : msgBytes)
-                signature.update(buffer, 0, b);
-            return signature.verify(signatureBytes);
-        } catch (SignatureException e) {
+            synchronized (keyFactories) {
+                publicKey = getKeyFactory(scheme).generatePublic(publicKeySpec);
+            }
+        } catch (InvalidKeySpecException e) {
+            return null;
+        } catch (NoSuchAlgorithmException e) {
             e.printStackTrace();
-            return false;
+            return null;
+        }
+
+        publicKeyCache.put(cacheKey, publicKey);
+        return publicKey;
+    }
+
+    private static Signature getVerifier(SignatureScheme scheme) throws NoSuchAlgorithmException {
+        Map<SignatureScheme, Signature> verifiersOfThread = verifiers.get();
+        Signature signature = verifiersOfThread.get(scheme);
+        if(signature == null) {
+            signature = scheme.createSignature();
+            verifiersOfThread.put(scheme, signature);
+        }
+        return signature;
+    }
+
+    private static KeyFactory getKeyFactory(SignatureScheme scheme) throws NoSuchAlgorithmException {
+        KeyFactory keyFactory = keyFactories.get(scheme);
+        if(keyFactory == null) {
+            keyFactory = scheme.createKeyFactory();
+            keyFactories.put(scheme, keyFactory);
         }
+        return keyFactory;
     }
 }
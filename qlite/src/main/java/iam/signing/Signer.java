@@ -17,11 +17,21 @@ public class Signer {
 
     private PrivateKey privateKey;
     private PublicKey publicKey;
+    private final SignatureScheme scheme;
     private final Signature signature;
 
     public Signer() throws NoSuchAlgorithmException {
+        this(SignatureScheme.DSA_SHA1);
+    }
+
+    /**
+     * @param scheme the signature scheme to sign with
+     * @throws NoSuchAlgorithmException if the scheme is not available in this runtime
+     * */
+    public Signer(SignatureScheme scheme) throws NoSuchAlgorithmException {
         super();
-        signature = Signature.getInstance(SignatureConstants.SIGNATURE_ALGORITHM);
+        this.scheme = scheme;
+        signature = scheme.createSignature();
         generateKeys();
     }
 
@@ -29,18 +39,8 @@ public class Signer {
      * Generates a key pair consisting of a private key and its associated public key.
      * This procedure has to be called before using sign().
      * */
-    private void generateKeys() {
-        KeyPairGenerator keyGen = null;
-        SecureRandom random = null;
-        try {
-            keyGen = KeyPairGenerator.getInstance(SignatureConstants.KEY_PAIR_GENERATOR_ALGORITHM);
-            random = SecureRandom.getInstance(SignatureConstants.SECURE_RANDOM_ALGORITHM);
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        }
-
-        keyGen.initialize(SignatureConstants.KEY_SIZE, random);
-        KeyPair pair = keyGen.generateKeyPair();
+    private void generateKeys() throws NoSuchAlgorithmException {
+        KeyPair pair = scheme.generateKeyPair();
 
         privateKey = pair.getPrivate();
         publicKey = pair.getPublic();
@@ -53,20 +53,10 @@ public class Signer {
      * @param message the message to be signed, ASCII encoded
      * @return the signature encoded in trytes (encoder: TryteTool.bytesToTrytes()).
      * */
-    public String sign(String message) {
-        byte[] msgBytes = message.getBytes();
-        byte[] buffer = new byte[SignatureConstants.KEY_SIZE];
-
+    public synchronized String sign(String message) {
         try {
-
-            // create signature
-            for (byte b : msgBytes)
-                signature.update(buffer, 0, b);
-
+            scheme.update(signature, message.getBytes());
             byte[] signatureBytes = signature.sign();
-
-            // byte[] -> String
-
             return TryteTool.bytesToTrytes(signatureBytes);
         } catch (SignatureException e) {
             e.printStackTrace();
@@ -74,6 +64,10 @@ public class Signer {
         }
     }
 
+    public SignatureScheme getScheme() {
+        return scheme;
+    }
+
     /**
      * @return the public key encoded in trytes (encoder: TryteTool.bytesToTrytes())
      * */
@@ -95,13 +89,13 @@ public class Signer {
      * @param privateKeyTrytes tryte encoded private key
      * @param publicKeyTrytes  tryte encoded public key
      * */
-    public void loadKeysFromTrytes(String privateKeyTrytes, String publicKeyTrytes) throws InvalidKeySpecException {
+    public synchronized void loadKeysFromTrytes(String privateKeyTrytes, String publicKeyTrytes) throws InvalidKeySpecException {
 
         byte[] privateKeyBytes = TryteTool.trytesToBytes(privateKeyTrytes);
         byte[] publicKeyBytes = TryteTool.trytesToBytes(publicKeyTrytes);
 
         try {
-            KeyFactory kf = KeyFactory.getInstance(SignatureConstants.KEY_PAIR_GENERATOR_ALGORITHM);
+            KeyFactory kf = scheme.createKeyFactory();
             privateKey = kf.generatePrivate(new PKCS8EncodedKeySpec(privateKeyBytes));
             publicKey = kf.generatePublic(new X509EncodedKeySpec(publicKeyBytes));
         } catch (NoSuchAlgorithmException e) {
@@ -1,13 +1,32 @@
 package oracle;
 
+import exceptions.IotaAPICallFailedException;
+import iam.IAMIndex;
+import iam.IAMReaderRegistry;
 import jota.model.Transaction;
+import oracle.statements.EpochCache;
 import oracle.statements.StatementType;
+import oracle.statements.hash.HashStatementIAMIndex;
 import oracle.statements.result.ResultStatement;
+import oracle.statements.result.ResultStatementIAMIndex;
 import oracle.statements.StatementIAMIndex;
 import qubic.QubicReader;
+import tangle.AddressLookupCoalescer;
 import tangle.TangleAPI;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @author microhash
@@ -17,9 +36,24 @@ import java.util.*;
  * */
 public class Assembly {
 
+    private static final int DEFAULT_STATEMENT_THREADS = 8;
+
+    private static volatile ExecutorService statementExecutor = Executors.newFixedThreadPool(DEFAULT_STATEMENT_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "qlite-statements");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final ScheduledExecutorService watchDeadlineScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "qlite-watch-deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final QubicReader qubicReader;
-    private final List<OracleReader> oracleReaders = new LinkedList<>();
+    private final List<OracleReader> oracleReaders = new ArrayList<>();
     private final ConsensusBuilder consensusBuilder = new ConsensusBuilder(this);
+    private final Map<String, StatementWatch> statementWatches = new HashMap<>();
     private int[] ratings;
 
     private int firstEpochIndex = -1; // epoch at which the oracle started monitoring the qubic epochs. necessary to decide when to use InterQubicResultFetcher for own assembly
@@ -36,6 +70,8 @@ public class Assembly {
     public void addOracles(List<String> oracleIDs) {
         if(oracleIDs == null)
             throw new NullPointerException("parameter 'oracleIDs' is null");
+        // one request for all public keys instead of one per oracle
+        IAMReaderRegistry.getInstance().prefetch(oracleIDs);
         for(String oracleID : oracleIDs)
             oracleReaders.add(new OracleReader(oracleID));
     }
@@ -43,31 +79,150 @@ public class Assembly {
     /**
      * Ensures that every oracle in the assembly has its Statement for a certain epoch available.
      * @param selection         a selection of the whole assembly (allows probabilisticly determined quorum)
-     * TODO optimize fetching by putting all findTransaction() requests into a single API call
+     * @throws IotaAPICallFailedException if the node could not be queried, the statements are then not cached and read again when needed
      * */
     public void fetchStatements(List<OracleReader> selection, StatementIAMIndex index) {
         if(firstEpochIndex < 0 && index.getStatementType() == StatementType.RESULT_STATEMENT)
             firstEpochIndex = index.getEpoch();
 
-        String[] addresses = buildStatementAddresses(selection, index);
+        try {
+            preloadStatements(selection, index);
+        } finally {
+            stopWatchingStatements(index);
+        }
+    }
+
+    /**
+     * Reads all statements of the selection which are not known yet with one batched lookup. Statements are always
+     * read from their complete address, so that conflicting packets of the same oracle are detected. For result statements, the hash
+     * statements of the same epoch are looked up in the same request since they are required to validate the results.
+     * @param selection a selection of the whole assembly
+     * @param index     the index of the statements to read
+     * @return the transactions found on the addresses of the unknown statements (empty if all were known), NULL if the lookup failed
+     * @throws IotaAPICallFailedException if the node could not be queried
+     * */
+    public List<Transaction> preloadStatements(List<OracleReader> selection, StatementIAMIndex index) {
+        StatementIAMIndex hashIndex = index.getStatementType() == StatementType.RESULT_STATEMENT
+                ? new HashStatementIAMIndex(index.getEpoch())
+                : null;
+
+        List<String> addresses = new ArrayList<>();
+        List<OracleReader> missing = new LinkedList<>();
+        for(OracleReader oracleReader : selection) {
+            boolean missingHashStatement = hashIndex != null && !oracleReader.hasStatement(hashIndex);
+            boolean missingStatement = !oracleReader.hasStatement(index);
+            if(missingHashStatement)
+                addresses.add(oracleReader.getReader().buildAddress(hashIndex));
+            if(missingStatement)
+                addresses.add(oracleReader.getReader().buildAddress(index));
+            if(missingHashStatement || missingStatement)
+                missing.add(oracleReader);
+        }
+        if(missing.isEmpty())
+            return Collections.emptyList();
+
+        // lookups of other assemblies on this node reading the same addresses are merged
+        List<Transaction> preload = AddressLookupCoalescer.getInstance().findTransactionsByAddresses(addresses.toArray(new String[0]));
+
+        if(missing.size() == 1) {
+            readStatements(missing.get(0), preload, hashIndex, index);
+            return preload;
+        }
+
+        // fetching fragments, parsing and verifying signatures is independent for each oracle
+        ExecutorService executor = statementExecutor;
+        List<CompletableFuture<Void>> reads = new ArrayList<>(missing.size());
+        for (OracleReader o : missing)
+            reads.add(CompletableFuture.runAsync(() -> readStatements(o, preload, hashIndex, index), executor));
+        try {
+            CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : e;
+        }
+        return preload;
+    }
+
+    private static void readStatements(OracleReader oracleReader, List<Transaction> preload, StatementIAMIndex hashIndex, StatementIAMIndex index) {
+        // the hash statement first, so the result statement finds it when validating itself
+        if(hashIndex != null)
+            oracleReader.read(preload, hashIndex);
+        oracleReader.read(preload, index);
+    }
 
-        List<Transaction> preload = TangleAPI.getInstance().findTransactionsByAddresses(addresses);
+    /**
+     * Changes the executor on which the statements of the individual oracles are read in parallel after their
+     * transactions have been looked up. The old executor is not shut down.
+     * @param executor executor to read the statements on, a fixed pool of 8 daemon threads by default
+     * */
+    public static void changeStatementExecutor(ExecutorService executor) {
+        if(executor == null)
+            throw new NullPointerException("parameter 'executor' is null");
+        statementExecutor = executor;
+    }
 
-        for (OracleReader o : selection)
-            o.read(preload, index);
+    /**
+     * Subscribes to the statement addresses of all oracles for a specific index and records on which of them
+     * transactions arrive. The statements themselves are only read by fetchStatements(). Watching stops once
+     * fetchStatements() is called for this index or at the deadline, whichever comes first. Meant for clients which
+     * want to react once all oracles have published. Backends which cannot push transactions are polled while
+     * the watch lasts (see PollingTransactionFeed), which costs additional requests to the node.
+     * @param index          the index of the statements to watch
+     * @param deadlineMillis unix timestamp (in ms) at which to stop watching, e.g. the end of the epoch
+     * @return future completing once transactions arrived on the statement addresses of all oracles in the assembly,
+     *         completes exceptionally with a TimeoutException if the deadline passes before
+     * */
+    public CompletableFuture<Void> watchStatements(StatementIAMIndex index, long deadlineMillis) {
+        String key = buildStatementWatchKey(index);
+        StatementWatch statementWatch;
+        synchronized (statementWatches) {
+            statementWatch = statementWatches.get(key);
+            if(statementWatch == null) {
+                statementWatch = new StatementWatch(oracleReaders, index);
+                statementWatches.put(key, statementWatch);
+                StatementWatch expiring = statementWatch;
+                long delay = Math.max(0, deadlineMillis - System.currentTimeMillis());
+                statementWatch.start(TangleAPI.getInstance().getTransactionFeed(),
+                        watchDeadlineScheduler.schedule(() -> expire(key, expiring), delay, TimeUnit.MILLISECONDS));
+            }
+        }
+        return statementWatch.getAllStatementsReceived();
     }
 
-    private static String[] buildStatementAddresses(List<OracleReader> selection, StatementIAMIndex index) {
-        String[] addresses = new String[selection.size()];
-        for (int i = 0; i < addresses.length; i++) {
-            OracleReader oracleReader = selection.get(i);
-            addresses[i] = oracleReader.getReader().buildAddress(index);
+    private void expire(String key, StatementWatch statementWatch) {
+        synchronized (statementWatches) {
+            // a new watch might have been started for the same index in the meantime
+            if(!statementWatches.remove(key, statementWatch))
+                return;
+        }
+        statementWatch.stop(TangleAPI.getInstance().getTransactionFeed());
+        statementWatch.getAllStatementsReceived().completeExceptionally(new TimeoutException("deadline for statements of " + key + " passed"));
+    }
+
+    private void stopWatchingStatements(StatementIAMIndex index) {
+        StatementWatch statementWatch;
+        synchronized (statementWatches) {
+            statementWatch = statementWatches.remove(buildStatementWatchKey(index));
+        }
+        if(statementWatch != null)
+            statementWatch.stop(TangleAPI.getInstance().getTransactionFeed());
+    }
+
+    private static String buildStatementWatchKey(StatementIAMIndex index) {
+        return index.getStatementType().name() + index.getEpoch();
+    }
+
+    /**
+     * @return amount of statement watches which have neither been ended by fetchStatements() nor by their deadline
+     * */
+    int countStatementWatches() {
+        synchronized (statementWatches) {
+            return statementWatches.size();
         }
-        return addresses;
     }
 
     /**
      * Ensures that every oracle in the assembly has its statement for a certain epoch available.
+     * @throws IotaAPICallFailedException if the node could not be queried
      * */
     public void fetchStatements(StatementIAMIndex index) {
         fetchStatements(oracleReaders, index);
@@ -81,13 +236,18 @@ public class Assembly {
      * ratings: -1 = negative, 0 = neutral, 1 = positive
      *
      * @param epochIndex   index of epoch that shall be rated
-     * @param quorumResult quorum based result (determines which nodes are correct)
-     *
-     * TODO actually call from somewhere
+     * @param quorumResult quorum based result (determines which nodes are correct), NULL if no quorum was reached
      * */
     protected void rate(int epochIndex, String quorumResult) {
         // reset ratings
-        ratings = new int[oracleReaders.size()];
+        int[] ratings = new int[oracleReaders.size()];
+        ResultStatementIAMIndex index = new ResultStatementIAMIndex(epochIndex);
+
+        // without quorum there is nothing to compare with, all oracles are rated neutral
+        if(quorumResult == null) {
+            this.ratings = ratings;
+            return;
+        }
 
         // rate every oracle
         for(int i = 0; i < oracleReaders.size(); i++) {
@@ -95,42 +255,93 @@ public class Assembly {
 
             // neutral rating for qnode.statements that were ignored in the last epoch
             // due to not being existent or following an invalid hash statement
-            ResultStatement resultEpoch = oracleReader.getResultStatementReader().read(epochIndex);
-            if(resultEpoch == null || !resultEpoch.isHashStatementValid()) {
-                ratings[i] = 0;
+            // (the statements have been fetched before, missing ones are not requested again)
+            ResultStatement resultEpoch = oracleReader.hasStatement(index) ? oracleReader.getResultStatementReader().read(epochIndex) : null;
+            if(resultEpoch == null || !resultEpoch.isHashStatementValid())
                 continue;
-            }
 
             // otherwise rate based on correctness of published result
             ratings[i] = quorumResult.equals(resultEpoch.getContent()) ? 1 : -1;
         }
 
+        this.ratings = ratings;
     }
 
     /**
-     * Filters out random oracles. Used to determine quorum deterministically.
+     * Filters out random oracles. Use selectOracleReaders() instead if the selection has to be reproducible.
      * @param amount amount of oracles to select
      * @return random selection of oracleReaders from the assembly (no double entries)
      * */
     public List<OracleReader> selectRandomOracleReaders(int amount) {
+        return selectOracleReaders(ThreadLocalRandom.current(), amount);
+    }
+
+    /**
+     * Selects oracles deterministically for a specific epoch. The selection only depends on the qubic, the epoch and
+     * the assembly list, so every verifier reproduces it, and the hash
+     * and result statements of an epoch are read from the same oracles (cache hits for the second phase).
+     * @param epochIndex the epoch for which the oracles are selected
+     * @param amount     amount of oracles to select
+     * @return selection of oracleReaders from the assembly (no double entries)
+     * */
+    public List<OracleReader> selectOracleReaders(int epochIndex, int amount) {
+        return selectOracleReaders(new Random(deriveSeed("EPOCH" + epochIndex)), amount);
+    }
+
+    /**
+     * Selects oracles deterministically for a specific IAMIndex.
+     * @see #selectOracleReaders(int, int)
+     * */
+    public List<OracleReader> selectOracleReaders(IAMIndex index, int amount) {
+        return selectOracleReaders(new Random(deriveSeed("IAM" + index)), amount);
+    }
+
+    private long deriveSeed(String context) {
+        String qubicID = qubicReader != null ? qubicReader.getID() : "";
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest((qubicID + "/" + context).getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Samples without replacement with a sparse Fisher-Yates shuffle of the first 'amount' positions (O(amount)).
+     * @return the selected oracles in the order of the assembly
+     * */
+    private List<OracleReader> selectOracleReaders(Random random, int amount) {
 
         if(amount < 0)
             throw new IllegalArgumentException("parameter amount cannot be negative");
 
         amount = Math.min(amount, oracleReaders.size());
+        if(amount == oracleReaders.size())
+            return new ArrayList<>(oracleReaders);
 
-        boolean[] selected = new boolean[oracleReaders.size()];
-        List<OracleReader> selection = new LinkedList<>();
-        while (amount > 0) {
-            int randomIndex = (int)(Math.random() * selected.length);
-            if(selected[randomIndex])
-                continue;
-            selection.add(oracleReaders.get(randomIndex));
-            amount--;
-        }
+        int[] positions = sampleUniformly(random, oracleReaders.size(), amount);
+
+        Arrays.sort(positions);
+        List<OracleReader> selection = new ArrayList<>(amount);
+        for(int position : positions)
+            selection.add(oracleReaders.get(position));
         return selection;
     }
 
+    /**
+     * Sparse Fisher-Yates: only the swapped positions are remembered.
+     * */
+    private static int[] sampleUniformly(Random random, int size, int amount) {
+        Map<Integer, Integer> swapped = new HashMap<>();
+        int[] sample = new int[amount];
+        for(int i = 0; i < amount; i++) {
+            int j = i + random.nextInt(size - i);
+            sample[i] = swapped.getOrDefault(j, j);
+            swapped.put(j, swapped.getOrDefault(i, i));
+        }
+        return sample;
+    }
+
     public boolean hasMonitoredEpoch(int epochIndex) {
         return firstEpochIndex >= 0 && firstEpochIndex <= epochIndex;
     }
@@ -146,6 +357,18 @@ public class Assembly {
         return ratings == null ? new int[oracleReaders.size()] : ratings;
     }
 
+    /**
+     * @return memory usage of the statement and consensus caches of this assembly (i.e. of its qubic)
+     * */
+    public EpochCache.Statistics getCacheStatistics() {
+        EpochCache.Statistics statistics = consensusBuilder.getCacheStatistics();
+        for(OracleReader oracleReader : oracleReaders) {
+            statistics = statistics.plus(oracleReader.getHashStatementReader().getCacheStatistics());
+            statistics = statistics.plus(oracleReader.getResultStatementReader().getCacheStatistics());
+        }
+        return statistics;
+    }
+
     public QubicReader getQubicReader() {
         return qubicReader;
     }
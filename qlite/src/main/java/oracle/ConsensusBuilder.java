@@ -1,23 +1,48 @@
 package oracle;
 
 import constants.GeneralConstants;
+import exceptions.IotaAPICallFailedException;
 import iam.IAMIndex;
-import iam.IAMReader;
 import iam.IAMWriter;
+import jota.model.Transaction;
+import oracle.statements.EpochCache;
+import oracle.statements.EpochLog;
+import oracle.statements.StatementStore;
 import oracle.statements.result.ResultStatement;
+import oracle.statements.result.ResultStatementIAMIndex;
 import org.json.JSONObject;
+import tangle.AddressLookupCoalescer;
+import tangle.JSONCodec;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 public class ConsensusBuilder {
 
-    private static final double QUORUM_MIN = 2D/3D;
+    private static final int MAX_DECIDED_IAM_CONSENSUS = 256;
+
+    // keys of the consensus records in the StatementStore
+    private static final String STORED_QUORUM = "quorum";
+    private static final String STORED_QUORUM_MAX = "quorum_max";
+    private static final String STORED_RESULT = "result";
     private final Assembly assembly;
 
-    private final Map<Integer, QuorumBasedResult> alreadyDeterminedQuorumBasedResults = new HashMap<>();
+    private final EpochCache<QuorumBasedResult> alreadyDeterminedQuorumBasedResults = new EpochCache<>();
+    // results which are not stored and must therefore never be evicted, otherwise they would be determined again from different statements
+    private final Map<Integer, QuorumBasedResult> unstoredQuorumBasedResults = new HashMap<>();
+    private EpochLog log; // NULL if the StatementStore is disabled
+    private boolean logOpened = false;
+
+    private final Map<String, QuorumBasedResult> decidedIAMConsensusByIndex = new LinkedHashMap<String, QuorumBasedResult>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, QuorumBasedResult> eldest) {
+            return size() > MAX_DECIDED_IAM_CONSENSUS;
+        }
+    };
 
     public ConsensusBuilder(Assembly assembly) {
         this.assembly = assembly;
@@ -27,6 +52,7 @@ public class ConsensusBuilder {
      * Determines the quorum based result for a specific epoch.
      * @param epochIndex index of the epoch for which the result shall be determined
      * @return quorum based result
+     * @throws IotaAPICallFailedException if the node could not be queried
      * */
     public QuorumBasedResult buildConsensus(int epochIndex) {
         return buildConsensus(null, epochIndex);
@@ -37,95 +63,188 @@ public class ConsensusBuilder {
      * @param selection  a selection of the whole assembly based on which the quorum will be determined probabilisticly
      * @param epochIndex index of the epoch for which the result shall be determined
      * @return quorum based result
+     * @throws IotaAPICallFailedException if the node could not be queried, no result is remembered then
      * */
     public QuorumBasedResult buildConsensus(List<OracleReader> selection, int epochIndex) {
 
         if(selection == null)
-            selection = assembly.selectRandomOracleReaders(GeneralConstants.QUORUM_MAX_ORACLE_SELECTION_SIZE);
+            selection = assembly.selectOracleReaders(epochIndex, GeneralConstants.QUORUM_MAX_ORACLE_SELECTION_SIZE);
 
         // if epoch is ongoing or hasn't even started yet
         if(epochIndex < 0 || epochIndex > assembly.getQubicReader().lastCompletedEpoch())
             return new QuorumBasedResult(0, selection.size(),null);
 
         // return result from history if already determined -> increases efficiency
-        if(alreadyDeterminedQuorumBasedResults.keySet().contains(epochIndex))
-            return alreadyDeterminedQuorumBasedResults.get(epochIndex);
+        QuorumBasedResult alreadyDetermined = findAlreadyDeterminedQuorumBasedResult(epochIndex);
+        if(alreadyDetermined != null)
+            return alreadyDetermined;
 
         // empty assembly
         if(selection.size() == 0)
             return new QuorumBasedResult(0, 0, null);
 
         // determine result
-        QuorumBasedResult quorumBasedResult = findVotingQuorum(accumulateEpochVotings(selection, epochIndex), selection.size());
+        QuorumBasedResult quorumBasedResult = accumulateEpochVotings(selection, epochIndex).toQuorumBasedResult();
 
         // add result to list of already known results
-        alreadyDeterminedQuorumBasedResults.put(epochIndex, quorumBasedResult);
+        rememberQuorumBasedResult(epochIndex, quorumBasedResult);
 
         return quorumBasedResult;
     }
 
-    public boolean hasAlreadyDeterminedQuorumBasedResult(int epochIndex) {
-        return alreadyDeterminedQuorumBasedResults.containsKey(epochIndex);
+    public synchronized boolean hasAlreadyDeterminedQuorumBasedResult(int epochIndex) {
+        EpochLog log = getLog();
+        return alreadyDeterminedQuorumBasedResults.contains(epochIndex) || unstoredQuorumBasedResults.containsKey(epochIndex)
+                || (log != null && log.contains(epochIndex));
     }
 
-    public QuorumBasedResult buildIAMConsensus(IAMIndex index) {
-        List<IAMReader> selection = new LinkedList<>();
-        for(OracleReader or : assembly.selectRandomOracleReaders(GeneralConstants.QUORUM_MAX_ORACLE_SELECTION_SIZE))
-            selection.add(or.getReader());
-        return findVotingQuorum(accumulateIAMVotings(selection, index), selection.size());
+    /**
+     * Looks the result up in memory and in the StatementStore (read-through).
+     * @return the already determined result, NULL if it has not been determined yet
+     * */
+    private synchronized QuorumBasedResult findAlreadyDeterminedQuorumBasedResult(int epochIndex) {
+        QuorumBasedResult quorumBasedResult = unstoredQuorumBasedResults.get(epochIndex);
+        if(quorumBasedResult == null)
+            quorumBasedResult = alreadyDeterminedQuorumBasedResults.get(epochIndex);
+        EpochLog log = getLog();
+        if(quorumBasedResult != null || log == null)
+            return quorumBasedResult;
+
+        try {
+            byte[] stored = log.read(epochIndex);
+            if(stored == null)
+                return null;
+            JSONObject json = JSONCodec.parse(new String(stored, StandardCharsets.UTF_8));
+            quorumBasedResult = new QuorumBasedResult(json.getDouble(STORED_QUORUM), json.getDouble(STORED_QUORUM_MAX), json.optString(STORED_RESULT, null));
+        } catch (RuntimeException e) {
+            disableLog(e);
+            return null;
+        }
+        alreadyDeterminedQuorumBasedResults.put(epochIndex, quorumBasedResult);
+        return quorumBasedResult;
     }
 
-    private static Map<String, Double> accumulateEpochVotings(List<OracleReader> voters, int epochIndex) {
-        Map<String, Double> quorumVoting = new HashMap<>();
-        for(OracleReader oracleReader : voters)
-            addOraclesVoteToVoting(oracleReader, epochIndex, quorumVoting);
-        return quorumVoting;
+    /**
+     * Only results kept in the StatementStore are cached within bounds, all others are kept in memory for good.
+     * */
+    private synchronized void rememberQuorumBasedResult(int epochIndex, QuorumBasedResult quorumBasedResult) {
+        EpochLog log = getLog();
+        if(log == null) {
+            unstoredQuorumBasedResults.put(epochIndex, quorumBasedResult);
+            return;
+        }
+        alreadyDeterminedQuorumBasedResults.put(epochIndex, quorumBasedResult);
+        if(log.contains(epochIndex))
+            return;
+        JSONObject json = new JSONObject();
+        json.put(STORED_QUORUM, quorumBasedResult.getQuorum());
+        json.put(STORED_QUORUM_MAX, quorumBasedResult.getQuorumMax());
+        json.put(STORED_RESULT, quorumBasedResult.getResult());
+        try {
+            log.append(epochIndex, JSONCodec.write(json).getBytes(StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            disableLog(e);
+            unstoredQuorumBasedResults.put(epochIndex, quorumBasedResult);
+        }
     }
 
-    private static Map<String, Double> accumulateIAMVotings(List<IAMReader> voters, IAMIndex index) {
-        Map<String, Double> quorumVoting = new HashMap<>();
-        for(IAMReader voter : voters) {
-            JSONObject vote = voter.read(index);
-            if(vote != null)
-                addVote(quorumVoting, vote.toString());
+    /**
+     * Opened lazily, the qubic is not known yet while the assembly is being constructed.
+     * */
+    private synchronized EpochLog getLog() {
+        if(!logOpened) {
+            log = StatementStore.openLogIfEnabled(assembly.getQubicReader().getID() + ".CONSENSUS");
+            logOpened = true;
         }
-        return quorumVoting;
+        return log;
     }
 
-    private static void addOraclesVoteToVoting(OracleReader oracleReader, int epochIndex, Map<String, Double> voting) {
-        oracleReader.getHashStatementReader().read(epochIndex);
-        ResultStatement resultStatement = oracleReader.getResultStatementReader().read(epochIndex);
-
-        if(resultStatement != null && resultStatement.isHashStatementValid())
-            addVote(voting, resultStatement.getContent());
+    private synchronized void disableLog(RuntimeException e) {
+        e.printStackTrace();
+        log = null;
     }
 
-    private static void addVote(Map<String, Double> quorumVoting, String votedFor) {
-        double count = quorumVoting.containsKey(votedFor) ? quorumVoting.get(votedFor) : 0;
-        quorumVoting.put(votedFor, count+1); // TODO allow individual voting weights
+    /**
+     * @return usage of the memory cache of already determined results which are kept in the StatementStore
+     * */
+    public synchronized EpochCache.Statistics getCacheStatistics() {
+        return alreadyDeterminedQuorumBasedResults.getStatistics();
     }
 
-    private static QuorumBasedResult findVotingQuorum(Map<String, Double> voting, double totalVotesAllowed) {
-
-        // init score variables
-        String highScoreResult = null;
-        double highScore = 0;
+    /**
+     * Determines the quorum based result of the messages published by the oracles at a specific IAMIndex.
+     * Results which are final (quorum reached or impossible even if the missing oracles still publish) are kept.
+     * @param index the index of the messages to vote on
+     * @return quorum based result
+     * @throws IotaAPICallFailedException if the node could not be queried
+     * */
+    public QuorumBasedResult buildIAMConsensus(IAMIndex index) {
+        String key = index.toString();
+        synchronized (decidedIAMConsensusByIndex) {
+            QuorumBasedResult decided = decidedIAMConsensusByIndex.get(key);
+            if(decided != null)
+                return decided;
+        }
 
-        // search for result with highest voting score
-        for(String result : voting.keySet()) {
-            double score = voting.get(result);
+        List<OracleReader> selection = assembly.selectOracleReaders(index, GeneralConstants.QUORUM_MAX_ORACLE_SELECTION_SIZE);
+        VoteTally tally = accumulateIAMVotings(selection, index);
 
-            // new high score result found?
-            if(score > highScore) {
-                highScoreResult = result;
-                highScore = score;
+        QuorumBasedResult quorumBasedResult = tally.toQuorumBasedResult();
+        if(tally.isDecided())
+            synchronized (decidedIAMConsensusByIndex) {
+                decidedIAMConsensusByIndex.put(key, quorumBasedResult);
             }
-        }
+        return quorumBasedResult;
+    }
+
+    /**
+     * Every oracle has one vote.
+     * */
+    private VoteTally accumulateEpochVotings(List<OracleReader> voters, int epochIndex) {
+        // one batched lookup for all hash and result statements which are not known yet
+        List<Transaction> preload = assembly.preloadStatements(voters, new ResultStatementIAMIndex(epochIndex));
+        VoteTally tally = new VoteTally(voters.size());
+        for(OracleReader oracleReader : voters)
+            addOraclesVoteToTally(oracleReader, epochIndex, preload, tally);
+        return tally;
+    }
 
-        // return result with highest score or NULL if it doesn't have at least 2/3 of votes
-        highScoreResult = highScore >= totalVotesAllowed * QUORUM_MIN ? highScoreResult : null;
+    /**
+     * The votes of all voters are looked up in one batched request and all of them are counted, so the quorum
+     * is the same no matter in which order the voters are read.
+     * */
+    private static VoteTally accumulateIAMVotings(List<OracleReader> voters, IAMIndex index) {
+        String[] addresses = new String[voters.size()];
+        for(int i = 0; i < addresses.length; i++)
+            addresses[i] = voters.get(i).getReader().buildAddress(index);
+        List<Transaction> preload = voters.isEmpty()
+                ? Collections.emptyList()
+                : AddressLookupCoalescer.getInstance().findTransactionsByAddresses(addresses);
+
+        VoteTally tally = new VoteTally(voters.size());
+        for(OracleReader voter : voters) {
+            JSONObject vote = voter.getReader().readFromSelection(index, preload);
+            if(vote != null)
+                tally.addVote(JSONCodec.write(vote), 1); // canonical, so equal votes of different oracles match
+        }
+        return tally;
+    }
 
-        return new QuorumBasedResult(highScore, totalVotesAllowed, highScoreResult);
+    private static void addOraclesVoteToTally(OracleReader oracleReader, int epochIndex, List<Transaction> preload, VoteTally tally) {
+        oracleReader.getHashStatementReader().read(preload, epochIndex);
+        ResultStatement resultStatement = oracleReader.getResultStatementReader().read(preload, epochIndex);
+        addResultStatementToTally(resultStatement, tally);
     }
 
+    /**
+     * @param resultStatement the result statement of an oracle, NULL if it has not published one (yet)
+     * */
+    static void addResultStatementToTally(ResultStatement resultStatement, VoteTally tally) {
+        if(resultStatement == null)
+            return;
+        if(resultStatement.isHashStatementValid())
+            tally.addVote(resultStatement.getContent(), 1);
+        else
+            tally.abstain(1);
+    }
 }
@@ -17,4 +17,13 @@ public class OracleListener {
      * @param qbr        the quorum based result found for the epoch
      * */
     public void onReceiveEpochResult(int epochIndex, QuorumBasedResult qbr) {}
+
+    /**
+     * Is called whenever the OracleWriter has completed a phase of an epoch. Allows to
+     * monitor whether the oracle manages to keep up with the epoch timing.
+     * @param epochIndex     index of the epoch the phase belongs to
+     * @param phase          the completed phase
+     * @param durationMillis time it took to complete the phase in milliseconds
+     * */
+    public void onPhaseCompleted(int epochIndex, OracleWriter.Phase phase, long durationMillis) {}
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package oracle;
 
+import exceptions.IotaAPICallFailedException;
 import qubic.QubicReader;
 import qubic.QubicSpecification;
 
@@ -13,6 +14,8 @@ import qubic.QubicSpecification;
  * */
 public class OracleManager {
 
+    private static final long ASSEMBLE_RETRY_INTERVAL = 10;
+
     private final OracleWriter ow;
     private State state = State.PAUSED;
 
@@ -39,17 +42,43 @@ public class OracleManager {
         state = State.PRE_EXECUTION;
 
         if(ow.getQubicReader().getSpecification().timeUntilExecutionStart() > 0) {
-            ow.apply();
+            applyAndCatchFailure();
             takeABreak(ow.getQubicReader().getSpecification().timeUntilExecutionStart());
         }
 
-        if(ow.assemble()) {
+        if(assembleAndRetryOnFailure()) {
             runEpochs();
         } else {
             state = State.ABORTED;
         }
     }
 
+    private void applyAndCatchFailure() {
+        try {
+            ow.apply();
+        } catch (IotaAPICallFailedException e) {
+            // the oracle might still have been accepted if it applied before
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * An unreachable node must not be mistaken for not being accepted into the assembly,
+     * so the assembly transaction is read again until the node answers or terminate() is called.
+     * @return TRUE if accepted into the assembly, FALSE if not accepted or terminated
+     * */
+    private boolean assembleAndRetryOnFailure() {
+        while (state != State.PAUSING) {
+            try {
+                return ow.assemble();
+            } catch (IotaAPICallFailedException e) {
+                e.printStackTrace();
+                takeABreak(ASSEMBLE_RETRY_INTERVAL);
+            }
+        }
+        return false;
+    }
+
     /**
      * Runs the qubic life cycle during the execution phase by publishing
      * HashStatements and ResultStatements until interrupted with terminate().
@@ -3,6 +3,7 @@ package oracle;
 import iam.exceptions.CorruptIAMStreamException;
 import jota.model.Transaction;
 import iam.IAMReader;
+import iam.IAMReaderRegistry;
 import oracle.statements.*;
 import oracle.statements.hash.HashStatementReader;
 import oracle.statements.result.ResultStatementReader;
@@ -28,7 +29,7 @@ public class OracleReader {
      * @param id IAM stream ID (= hash of IAM stream's root transaction)
      * */
     public OracleReader(String id) throws CorruptIAMStreamException {
-        reader = new IAMReader(id);
+        reader = IAMReaderRegistry.getInstance().get(id);
         hashStatementReader = new HashStatementReader(reader);
         resultStatementReader = new ResultStatementReader(reader, hashStatementReader);
     }
@@ -48,6 +49,21 @@ public class OracleReader {
         }
     }
 
+    /**
+     * @param index the index of the statement
+     * @return TRUE if the statement is already known and reading it won't require tangle requests
+     * */
+    public boolean hasStatement(StatementIAMIndex index) {
+        switch (index.getStatementType()) {
+            case HASH_STATEMENT:
+                return hashStatementReader.hasStatement(index.getEpoch());
+            case RESULT_STATEMENT:
+                return resultStatementReader.hasStatement(index.getEpoch());
+            default:
+                throw new IllegalStateException("unknown statement type: " + index.getStatementType().name());
+        }
+    }
+
     public HashStatementReader getHashStatementReader() {
         return hashStatementReader;
     }
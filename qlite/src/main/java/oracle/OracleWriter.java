@@ -1,7 +1,9 @@
 package oracle;
 
 import constants.TangleJSONConstants;
+import exceptions.IotaAPICallFailedException;
 import iam.IAMIndex;
+import iam.IAMWriteQueue;
 import iam.IAMWriter;
 import oracle.statements.*;
 import oracle.statements.hash.HashStatement;
@@ -14,11 +16,14 @@ import org.json.JSONException;
 import qlvm.QLVM;
 import org.json.JSONObject;
 import qubic.QubicReader;
+import qubic.QubicSpecification;
+import tangle.JSONCodec;
 import tangle.TangleAPI;
 import tangle.TryteTool;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class OracleWriter {
 
@@ -66,24 +71,43 @@ public class OracleWriter {
      * */
     public void doHashStatement(int epochIndex) {
 
-        if(epochIndex > 0)
+        PhaseTimer phaseTimer = new PhaseTimer(epochIndex);
+
+        if(epochIndex > 0) {
             fetchStatements(new ResultStatementIAMIndex(epochIndex-1));
+            phaseTimer.complete(Phase.RESULT_FETCH);
+        }
 
         this.currentlyProcessedResult = new ResultStatement(epochIndex, calcResult(epochIndex));
+        phaseTimer.complete(Phase.QLVM);
 
         String hash = ResultHasher.hash(this.currentlyProcessedResult);
         int[] ratings = assembly.getRatings();
-        hashStatementWriter.write(new HashStatement(epochIndex, hash, ratings));
+        logFailure(hashStatementWriter.writeAsync(new HashStatement(epochIndex, hash, ratings), determineHashPeriodEndMillis(epochIndex)));
+        phaseTimer.complete(Phase.HASH_PUBLISH);
     }
 
     private void fetchStatements(StatementIAMIndex index) {
-        assembly.fetchStatements(index);
-        if(index.getStatementType() == StatementType.HASH_STATEMENT)
-            updateListenersWithPreviousEpoch(index.getEpoch());
+        try {
+            assembly.fetchStatements(index);
+        } catch (IotaAPICallFailedException e) {
+            // statements are not cached on failure and will be fetched again when needed,
+            // so an outage is not mistaken for oracles that did not publish anything
+            e.printStackTrace();
+        }
     }
 
     private void updateListenersWithPreviousEpoch(int previousEpochIndex) {
-        QuorumBasedResult qbr = assembly.getConsensusBuilder().buildConsensus(previousEpochIndex-1);
+        QuorumBasedResult qbr;
+        try {
+            qbr = assembly.getConsensusBuilder().buildConsensus(previousEpochIndex-1);
+        } catch (IotaAPICallFailedException e) {
+            e.printStackTrace();
+            return;
+        }
+        // published with the next hash statement
+        if(previousEpochIndex > 0)
+            assembly.rate(previousEpochIndex-1, qbr.getResult());
         for(OracleListener qf : oracleListeners)
             qf.onReceiveEpochResult(previousEpochIndex, qbr);
     }
@@ -93,14 +117,28 @@ public class OracleWriter {
      * for the current epoch. Result has already been calculated by doHashStatement().
      * */
     public void doResultStatement() {
-        fetchStatements(new HashStatementIAMIndex(currentlyProcessedResult.getEpochIndex()));
-        resultStatementWriter.write(currentlyProcessedResult);
+        int epochIndex = currentlyProcessedResult.getEpochIndex();
+        PhaseTimer phaseTimer = new PhaseTimer(epochIndex);
+
+        fetchStatements(new HashStatementIAMIndex(epochIndex));
+        phaseTimer.complete(Phase.HASH_FETCH);
+
+        updateListenersWithPreviousEpoch(epochIndex);
+        phaseTimer.complete(Phase.CONSENSUS);
+
+        logFailure(resultStatementWriter.writeAsync(currentlyProcessedResult, determineEpochEndMillis(epochIndex)));
+        phaseTimer.complete(Phase.RESULT_PUBLISH);
+
         publishEpochLinkIfSet();
     }
 
     private void publishEpochLinkIfSet() {
+        String content = currentlyProcessedResult.getContent();
+        // most results don't contain an epoch link, these are not parsed at all
+        if(!content.contains("epoch_link"))
+            return;
         try {
-            JSONObject result = new JSONObject(currentlyProcessedResult.getContent());
+            JSONObject result = JSONCodec.parse(content);
             if(result.has("epoch_link")) {
                 JSONObject epoch_link = result.getJSONObject("epoch_link");
                 long position = epoch_link.getLong("position");
@@ -115,14 +153,38 @@ public class OracleWriter {
                 message.put("type", "epoch link");
                 message.put("qubic", qubicReader.getID());
                 message.put("epoch", currentlyProcessedResult.getEpochIndex());
-                writer.write(new IAMIndex(keyword, position), message);
+                // epoch links are the first to be shed when the node is overloaded
+                logFailure(writer.writeAsync(new IAMIndex(keyword, position), message, IAMWriteQueue.Priority.NON_CRITICAL,
+                        determineEpochEndMillis(currentlyProcessedResult.getEpochIndex())));
             }
         } catch (JSONException e) {}
     }
 
+    /**
+     * Statements are written in the background if the IAMWriter has a write queue (see IAMWriter.setWriteQueue()).
+     * Failures can then no longer be thrown to the caller.
+     * */
+    private static void logFailure(CompletableFuture<String> write) {
+        write.exceptionally(t -> {
+            t.printStackTrace();
+            return null;
+        });
+    }
+
+    private long determineHashPeriodEndMillis(int epochIndex) {
+        QubicSpecification specification = qubicReader.getSpecification();
+        return 1000L * (specification.getExecutionStartUnix() + (long)epochIndex * specification.getEpochDuration() + specification.getHashPeriodDuration());
+    }
+
+    private long determineEpochEndMillis(int epochIndex) {
+        QubicSpecification specification = qubicReader.getSpecification();
+        return 1000L * (specification.getExecutionStartUnix() + (long)(epochIndex+1) * specification.getEpochDuration());
+    }
+
     /**
      * Sends an application to the qubic's application address. The qubic owner might read
      * received applications on this address and consider adding the oracle to the assembly.
+     * @throws IotaAPICallFailedException if the application could not be sent
      * */
     public void apply() {
         throwExceptionIfTooLateToApply();
@@ -159,6 +221,7 @@ public class OracleWriter {
      * Checks the assembly and adds all oracle mam roots listed in the assembly transaction to
      * its own assembly list in case it is part of the assembly.
      * @return TRUE = successfully made it into assembly, FALSE = did not make it into assembly
+     * @throws IotaAPICallFailedException if the node could not be queried
      * */
     public boolean assemble() {
         List<String> acceptedOracles = qubicReader.getAssemblyList();
@@ -168,6 +231,10 @@ public class OracleWriter {
         return accepted;
     }
 
+    /**
+     * @return TRUE if the oracle is listed in the assembly transaction
+     * @throws IotaAPICallFailedException if the node could not be queried
+     * */
     public boolean isAcceptedIntoAssembly() {
         final QubicReader qubic = getQubicReader();
         final List<String> assemblyList = qubic.getAssemblyList();
@@ -220,4 +287,32 @@ public class OracleWriter {
     public void setName(String name) {
         this.name = name;
     }
+
+    /**
+     * The phases an oracle runs through during each epoch, in chronological order.
+     * @see OracleListener#onPhaseCompleted(int, Phase, long)
+     * */
+    public enum Phase {
+        RESULT_FETCH, QLVM, HASH_PUBLISH, HASH_FETCH, CONSENSUS, RESULT_PUBLISH
+    }
+
+    /**
+     * Measures the duration of consecutive phases and reports each to the listeners.
+     * */
+    private class PhaseTimer {
+
+        private final int epochIndex;
+        private long phaseStart = System.currentTimeMillis();
+
+        PhaseTimer(int epochIndex) {
+            this.epochIndex = epochIndex;
+        }
+
+        void complete(Phase phase) {
+            long now = System.currentTimeMillis();
+            for(OracleListener oracleListener : oracleListeners)
+                oracleListener.onPhaseCompleted(epochIndex, phase, now - phaseStart);
+            phaseStart = now;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+package oracle;
+
+import jota.model.Transaction;
+import oracle.statements.StatementIAMIndex;
+import tangle.TransactionFeed;
+import tangle.TransactionListener;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * @author microhash
+ *
+ * The StatementWatch subscribes to the statement addresses of a group of oracles for a specific index and
+ * records on which of them transactions arrive. Statements are deliberately not read from the feed: the first
+ * packet to reach this node is not necessarily the only one on the address, and an oracle publishing conflicting
+ * packets must not be counted as a regular voter. Assembly.fetchStatements() therefore always reads the complete
+ * addresses before a statement is used.
+ * @see Assembly#watchStatements(StatementIAMIndex, long)
+ * */
+class StatementWatch implements TransactionListener {
+
+    private final Map<String, OracleReader> oracleReadersByAddress = new HashMap<>();
+    private final CompletableFuture<Void> allStatementsReceived = new CompletableFuture<>();
+    private final Set<String> activeAddresses = new HashSet<>();
+    private ScheduledFuture<?> expiration;
+
+    StatementWatch(List<OracleReader> oracleReaders, StatementIAMIndex index) {
+        for(OracleReader oracleReader : oracleReaders) {
+            String address = oracleReader.getReader().buildAddress(index);
+            oracleReadersByAddress.put(address, oracleReader);
+            if(oracleReader.hasStatement(index))
+                activeAddresses.add(address);
+        }
+        if(activeAddresses.size() == oracleReadersByAddress.size())
+            allStatementsReceived.complete(null);
+    }
+
+    void start(TransactionFeed transactionFeed, ScheduledFuture<?> expiration) {
+        this.expiration = expiration;
+        for(String address : oracleReadersByAddress.keySet())
+            transactionFeed.subscribe(address, this);
+    }
+
+    void stop(TransactionFeed transactionFeed) {
+        for(String address : oracleReadersByAddress.keySet())
+            transactionFeed.unsubscribe(address, this);
+        if(expiration != null)
+            expiration.cancel(false);
+    }
+
+    @Override
+    public void onTransaction(Transaction transaction) {
+        if(oracleReadersByAddress.containsKey(transaction.getAddress()))
+            markAddressAsActive(transaction.getAddress());
+    }
+
+    private synchronized void markAddressAsActive(String address) {
+        // the same statement might be attached more than once
+        if(activeAddresses.add(address) && activeAddresses.size() == oracleReadersByAddress.size())
+            allStatementsReceived.complete(null);
+    }
+
+    /**
+     * @return future completing once transactions arrived on the statement addresses of all watched oracles
+     * */
+    CompletableFuture<Void> getAllStatementsReceived() {
+        return allStatementsReceived;
+    }
+}
@@ -0,0 +1,127 @@
+package oracle;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author microhash
+ *
+ * The VoteTally counts the votes of an assembly (or a selection of it) for a quorum based result. Votes can be
+ * added one by one as the statements arrive. Results (up to QLVM_MAX_VALUE_LENGTH chars) are counted by their
+ * SHA-256 digest, and the leading result is updated with every vote instead of being searched at the end.
+ *
+ * Since votes are only ever added, the tally knows early when the quorum (2/3 of all allowed votes) has been
+ * reached or can no longer be reached by any result, even if all remaining voters still vote. In both cases
+ * the outcome is final and there is no need to wait for the remaining voters.
+ * */
+public class VoteTally {
+
+    static final double QUORUM_MIN = 2D/3D;
+
+    private static final ThreadLocal<MessageDigest> sha256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    });
+
+    private final double totalVotesAllowed;
+    private final Map<ByteBuffer, Double> scoreByDigest = new HashMap<>();
+
+    private double votesCast = 0;
+    private String leadingResult = null;
+    private double leadingScore = 0;
+
+    /**
+     * @param totalVotesAllowed maximum voting power (e.g. the amount of oracles in the selection)
+     * */
+    public VoteTally(double totalVotesAllowed) {
+        if(totalVotesAllowed < 0)
+            throw new IllegalArgumentException("parameter 'totalVotesAllowed' cannot be negative");
+        this.totalVotesAllowed = totalVotesAllowed;
+    }
+
+    /**
+     * @param votedFor the result voted for
+     * @param weight   voting power of the voter
+     * @throws IllegalStateException if the vote would exceed the total votes allowed
+     * */
+    public synchronized void addVote(String votedFor, double weight) {
+        if(votedFor == null)
+            throw new NullPointerException("parameter 'votedFor' is null");
+        if(weight < 0)
+            throw new IllegalArgumentException("parameter 'weight' cannot be negative");
+        registerVotesCast(weight);
+
+        ByteBuffer digest = ByteBuffer.wrap(sha256.get().digest(votedFor.getBytes(StandardCharsets.UTF_8)));
+        double score = scoreByDigest.getOrDefault(digest, 0D) + weight;
+        scoreByDigest.put(digest, score);
+
+        // ties are won by the result which reached the score first
+        if(score > leadingScore) {
+            leadingScore = score;
+            leadingResult = votedFor;
+        }
+    }
+
+    /**
+     * Counts a voter who will not vote for any result (e.g. its result statement followed an invalid hash statement).
+     * @param weight voting power of the voter
+     * */
+    public synchronized void abstain(double weight) {
+        if(weight < 0)
+            throw new IllegalArgumentException("parameter 'weight' cannot be negative");
+        registerVotesCast(weight);
+    }
+
+    private void registerVotesCast(double weight) {
+        // tolerance for the rounding errors of summed up weights
+        if(votesCast + weight > totalVotesAllowed * (1 + 1E-9))
+            throw new IllegalStateException("more votes than the " + totalVotesAllowed + " votes allowed");
+        votesCast += weight;
+    }
+
+    /**
+     * @return TRUE if the leading result has reached the quorum, no other result can overtake it anymore
+     * */
+    public synchronized boolean isQuorumReached() {
+        return totalVotesAllowed > 0 && leadingScore >= totalVotesAllowed * QUORUM_MIN;
+    }
+
+    /**
+     * @return TRUE if no result can reach the quorum anymore, not even if all remaining votes go to the leading result
+     * */
+    public synchronized boolean isQuorumImpossible() {
+        return totalVotesAllowed == 0 || leadingScore + (totalVotesAllowed - votesCast) < totalVotesAllowed * QUORUM_MIN;
+    }
+
+    /**
+     * @return TRUE if the outcome is final and the remaining voters don't have to be waited for
+     * */
+    public synchronized boolean isDecided() {
+        return isQuorumReached() || isQuorumImpossible();
+    }
+
+    /**
+     * @return the result with the highest score (first to reach it in case of a tie), NULL if no votes were added
+     * */
+    public synchronized String getLeadingResult() {
+        return leadingResult;
+    }
+
+    public synchronized double getVotesCast() {
+        return votesCast;
+    }
+
+    /**
+     * @return the current tally, the result is NULL unless the quorum has been reached
+     * */
+    public synchronized QuorumBasedResult toQuorumBasedResult() {
+        return new QuorumBasedResult(leadingScore, totalVotesAllowed, isQuorumReached() ? leadingResult : null);
+    }
+}
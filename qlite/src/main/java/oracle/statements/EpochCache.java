@@ -0,0 +1,269 @@
+package oracle.statements;
+
+import java.util.Arrays;
+
+/**
+ * @author microhash
+ *
+ * EpochCache maps epochs to values (e.g. statements or quorum based results) within a size and an age bound.
+ * Recent epochs are accessed frequently while old epochs are hardly ever needed again, so the entries are kept
+ * sorted by epoch and the oldest epochs are evicted first. Epochs are primitive int keys in a sorted array,
+ * adding the next epoch and evicting the oldest are O(1), lookups are a binary search.
+ *
+ * Entries older than the age bound are dropped on access. Thread-safe, statements of different oracles are
+ * read concurrently.
+ * */
+public class EpochCache<V> {
+
+    private static int defaultMaxEntries = 256;
+    private static long defaultMaxAgeMillis = 3600 * 1000;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int maxEntries;
+    private final long maxAgeNanos;
+
+    // entries are stored in [start, end) sorted by epoch
+    private int[] epochs = new int[0];
+    private Object[] values = new Object[0];
+    private long[] storedAt = new long[0];
+    private int start = 0, end = 0;
+
+    private long hits = 0, misses = 0, evictions = 0;
+
+    /**
+     * Changes the bounds of all caches created afterwards.
+     * @param maxEntries   maximum amount of epochs per cache
+     * @param maxAgeMillis maximum time an entry is kept, 0 to keep entries until they are evicted by size
+     * */
+    public static synchronized void changeDefaultBounds(int maxEntries, long maxAgeMillis) {
+        validateBounds(maxEntries, maxAgeMillis);
+        defaultMaxEntries = maxEntries;
+        defaultMaxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Creates a cache with the default bounds.
+     * @see #changeDefaultBounds(int, long)
+     * */
+    public EpochCache() {
+        this(getDefaultMaxEntries(), getDefaultMaxAgeMillis());
+    }
+
+    /**
+     * @param maxEntries   maximum amount of epochs kept
+     * @param maxAgeMillis maximum time an entry is kept, 0 to keep entries until they are evicted by size
+     * */
+    public EpochCache(int maxEntries, long maxAgeMillis) {
+        validateBounds(maxEntries, maxAgeMillis);
+        this.maxEntries = maxEntries;
+        this.maxAgeNanos = maxAgeMillis * 1000000;
+    }
+
+    private static void validateBounds(int maxEntries, long maxAgeMillis) {
+        if(maxEntries <= 0)
+            throw new IllegalArgumentException("parameter 'maxEntries' must be positive");
+        if(maxAgeMillis < 0)
+            throw new IllegalArgumentException("parameter 'maxAgeMillis' must not be negative");
+    }
+
+    private static synchronized int getDefaultMaxEntries() {
+        return defaultMaxEntries;
+    }
+
+    private static synchronized long getDefaultMaxAgeMillis() {
+        return defaultMaxAgeMillis;
+    }
+
+    /**
+     * @param epoch the epoch
+     * @return the value of the epoch, NULL if it is not cached
+     * */
+    @SuppressWarnings("unchecked")
+    public synchronized V get(int epoch) {
+        int index = findValidIndex(epoch);
+        if(index < 0) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return (V)values[index];
+    }
+
+    /**
+     * @param epoch the epoch
+     * @return TRUE if a value of the epoch is cached (not counted as hit or miss)
+     * */
+    public synchronized boolean contains(int epoch) {
+        return findValidIndex(epoch) >= 0;
+    }
+
+    /**
+     * Caches the value of an epoch, replacing a previous one. Evicts the oldest epoch if the cache is full,
+     * the value is not cached at all if its epoch would be the oldest one.
+     * @param epoch the epoch, must not be negative
+     * @param value the value, must not be NULL
+     * */
+    public synchronized void put(int epoch, V value) {
+        if(value == null)
+            throw new NullPointerException("parameter 'value' is null");
+        long now = System.nanoTime();
+        evictExpiredHead(now);
+
+        int index = Arrays.binarySearch(epochs, start, end, epoch);
+        if(index >= 0) {
+            values[index] = value;
+            storedAt[index] = now;
+            return;
+        }
+
+        if(end - start >= maxEntries) {
+            if(epoch < epochs[start]) {
+                evictions++;
+                return;
+            }
+            evictHead();
+        }
+
+        int insertion = -index - 1;
+        if(end == epochs.length) {
+            int shift = start;
+            makeRoom();
+            insertion -= shift;
+        }
+        System.arraycopy(epochs, insertion, epochs, insertion+1, end - insertion);
+        System.arraycopy(values, insertion, values, insertion+1, end - insertion);
+        System.arraycopy(storedAt, insertion, storedAt, insertion+1, end - insertion);
+        epochs[insertion] = epoch;
+        values[insertion] = value;
+        storedAt[insertion] = now;
+        end++;
+    }
+
+    /**
+     * Moves the entries to the front of the arrays and grows them if they are still full.
+     * */
+    private void makeRoom() {
+        int size = end - start;
+        if(start > 0) {
+            System.arraycopy(epochs, start, epochs, 0, size);
+            System.arraycopy(values, start, values, 0, size);
+            System.arraycopy(storedAt, start, storedAt, 0, size);
+            Arrays.fill(values, size, end, null);
+            start = 0;
+            end = size;
+        }
+        if(end == epochs.length) {
+            int capacity = Math.min(maxEntries, Math.max(INITIAL_CAPACITY, 2 * epochs.length));
+            epochs = Arrays.copyOf(epochs, capacity);
+            values = Arrays.copyOf(values, capacity);
+            storedAt = Arrays.copyOf(storedAt, capacity);
+        }
+    }
+
+    private int findValidIndex(int epoch) {
+        int index = Arrays.binarySearch(epochs, start, end, epoch);
+        if(index < 0)
+            return -1;
+        if(isExpired(index, System.nanoTime())) {
+            remove(index);
+            return -1;
+        }
+        return index;
+    }
+
+    private boolean isExpired(int index, long now) {
+        return maxAgeNanos > 0 && now - storedAt[index] > maxAgeNanos;
+    }
+
+    private void evictExpiredHead(long now) {
+        while (start < end && isExpired(start, now))
+            evictHead();
+    }
+
+    private void evictHead() {
+        values[start] = null;
+        start++;
+        evictions++;
+    }
+
+    private void remove(int index) {
+        if(index == start) {
+            evictHead();
+            return;
+        }
+        System.arraycopy(epochs, index+1, epochs, index, end - index - 1);
+        System.arraycopy(values, index+1, values, index, end - index - 1);
+        System.arraycopy(storedAt, index+1, storedAt, index, end - index - 1);
+        values[--end] = null;
+        evictions++;
+    }
+
+    /**
+     * @return amount of cached epochs
+     * */
+    public synchronized int size() {
+        return end - start;
+    }
+
+    public synchronized Statistics getStatistics() {
+        return new Statistics(size(), epochs.length, hits, misses, evictions);
+    }
+
+    /**
+     * Snapshot of the usage of one or more caches.
+     * */
+    public static class Statistics {
+
+        public static final Statistics EMPTY = new Statistics(0, 0, 0, 0, 0);
+
+        // bytes per slot: int epoch, long timestamp, object reference
+        private static final int BYTES_PER_SLOT = 4 + 8 + 8;
+
+        private final int entries, slots;
+        private final long hits, misses, evictions;
+
+        private Statistics(int entries, int slots, long hits, long misses, long evictions) {
+            this.entries = entries;
+            this.slots = slots;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        /**
+         * @return combined statistics of both caches
+         * */
+        public Statistics plus(Statistics other) {
+            return new Statistics(entries + other.entries, slots + other.slots, hits + other.hits, misses + other.misses, evictions + other.evictions);
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return bytes allocated for the index of the cached entries (excluding the values themselves)
+         * */
+        public long getIndexBytes() {
+            return (long)slots * BYTES_PER_SLOT;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        @Override
+        public String toString() {
+            return entries + " entries (" + getIndexBytes() + " index bytes), " + hits + " hits, " + misses + " misses, " + evictions + " evictions";
+        }
+    }
+}
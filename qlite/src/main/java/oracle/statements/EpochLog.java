@@ -0,0 +1,231 @@
+package oracle.statements;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * @author microhash
+ *
+ * EpochLog is an append-only log file mapping epochs to records (e.g. serialized statements). The file is
+ * memory-mapped and an index of the record offsets by epoch is rebuilt when it is opened, so records
+ * can be read without any tangle request after a restart.
+ *
+ * Layout: magic (4 bytes) | version (4 bytes) | records, each: payload length (4) | epoch (4) | CRC32 of payload (4) | payload
+ *
+ * Writing a record for an epoch which already has one supersedes the old record. Incomplete records at the
+ * end of the file (e.g. after a crash) are dropped when opening. compact() rewrites the log without superseded
+ * records and without epochs which are no longer needed. The index only holds epochs which have a record, so its
+ * size does not depend on how high the epochs are.
+ * @see StatementStore
+ * */
+public class EpochLog {
+
+    private static final int MAGIC = 0x514C4F47; // "QLOG"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_LENGTH = 8;
+    private static final int RECORD_HEADER_LENGTH = 12;
+    private static final int INITIAL_MAPPED_SIZE = 1 << 16;
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+
+    private final File file;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int writePosition;
+    private int supersededBytes = 0;
+
+    /** offset of the latest record of each epoch which has one */
+    private final TreeMap<Integer, Integer> offsetByEpoch = new TreeMap<>();
+
+    /**
+     * Opens the log, creates it if it does not exist yet.
+     * @param file the log file
+     * @throws IOException if the file cannot be opened or is not an epoch log
+     * */
+    public EpochLog(File file) throws IOException {
+        this.file = file;
+        open();
+        if(supersededBytes > INITIAL_MAPPED_SIZE && supersededBytes > writePosition / 2)
+            compact(0);
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if(size > Integer.MAX_VALUE || (size > 0 && !hasValidFileHeader())) {
+            channel.close();
+            throw new IOException(file + " is not an epoch log of version " + VERSION);
+        }
+
+        map((int)Math.max(size, INITIAL_MAPPED_SIZE));
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+
+        offsetByEpoch.clear();
+        supersededBytes = 0;
+        writePosition = FILE_HEADER_LENGTH;
+        while (isValidRecordAt(writePosition)) {
+            int epoch = buffer.getInt(writePosition + 4);
+            indexRecord(epoch, writePosition);
+            writePosition += RECORD_HEADER_LENGTH + buffer.getInt(writePosition);
+        }
+    }
+
+    private boolean hasValidFileHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_LENGTH);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0);
+        return !header.hasRemaining() && header.getInt(0) == MAGIC && header.getInt(4) == VERSION;
+    }
+
+    private boolean isValidRecordAt(int position) {
+        if(position + RECORD_HEADER_LENGTH > buffer.capacity())
+            return false;
+        int length = buffer.getInt(position);
+        int epoch = buffer.getInt(position + 4);
+        if(length <= 0 || length > MAX_RECORD_LENGTH || epoch < 0 || position + RECORD_HEADER_LENGTH + length > buffer.capacity())
+            return false;
+        return buffer.getInt(position + 8) == checksum(readPayload(position));
+    }
+
+    private void indexRecord(int epoch, int offset) {
+        Integer supersededOffset = offsetByEpoch.put(epoch, offset);
+        if(supersededOffset != null)
+            supersededBytes += RECORD_HEADER_LENGTH + buffer.getInt(supersededOffset);
+    }
+
+    private void map(int size) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * @param epoch the epoch of the record
+     * @param payload the record, must not be empty
+     * */
+    public synchronized void append(int epoch, byte[] payload) {
+        if(epoch < 0)
+            throw new IllegalArgumentException("parameter 'epoch' must not be negative");
+        if(payload.length == 0 || payload.length > MAX_RECORD_LENGTH)
+            throw new IllegalArgumentException("payload length must be between 1 and " + MAX_RECORD_LENGTH + " bytes");
+        ensureOpen();
+
+        try {
+            int required = writePosition + RECORD_HEADER_LENGTH + payload.length;
+            if(required > buffer.capacity())
+                map(Math.max(required, 2 * buffer.capacity()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // the length is written last, so an interrupted append leaves an invalid record which is dropped when opening
+        buffer.putInt(writePosition + 4, epoch);
+        buffer.putInt(writePosition + 8, checksum(payload));
+        ByteBuffer target = buffer.duplicate();
+        target.position(writePosition + RECORD_HEADER_LENGTH);
+        target.put(payload);
+        buffer.putInt(writePosition, payload.length);
+
+        indexRecord(epoch, writePosition);
+        writePosition += RECORD_HEADER_LENGTH + payload.length;
+    }
+
+    /**
+     * @param epoch the epoch of the record
+     * @return the record of the epoch, NULL if there is none
+     * */
+    public synchronized byte[] read(int epoch) {
+        ensureOpen();
+        Integer offset = offsetByEpoch.get(epoch);
+        return offset != null ? readPayload(offset) : null;
+    }
+
+    public synchronized boolean contains(int epoch) {
+        return offsetByEpoch.containsKey(epoch);
+    }
+
+    private byte[] readPayload(int offset) {
+        byte[] payload = new byte[buffer.getInt(offset)];
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset + RECORD_HEADER_LENGTH);
+        source.get(payload);
+        return payload;
+    }
+
+    /**
+     * Rewrites the log without superseded records and without the records of epochs before retainFromEpoch.
+     * @param retainFromEpoch records of all epochs before this one are dropped
+     * @throws UncheckedIOException if the log could not be rewritten, it remains usable in this case
+     * */
+    public synchronized void compact(int retainFromEpoch) {
+        ensureOpen();
+        File compacted = new File(file.getPath() + ".compact");
+        try {
+            try (FileChannel target = FileChannel.open(compacted.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_LENGTH).putInt(MAGIC).putInt(VERSION);
+                header.flip();
+                target.write(header);
+                for(Map.Entry<Integer, Integer> entry : offsetByEpoch.tailMap(retainFromEpoch).entrySet()) {
+                    int offset = entry.getValue();
+                    ByteBuffer record = buffer.duplicate();
+                    record.position(offset);
+                    record.limit(offset + RECORD_HEADER_LENGTH + buffer.getInt(offset));
+                    while (record.hasRemaining())
+                        target.write(record);
+                }
+                target.force(true);
+            }
+            buffer.force();
+            channel.close();
+            Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            open();
+        } catch (IOException e) {
+            try {
+                if(!channel.isOpen())
+                    open();
+            } catch (IOException reopenFailure) {
+                e.addSuppressed(reopenFailure);
+            }
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes all records to the disk and closes the log.
+     * */
+    public synchronized void close() {
+        if(!channel.isOpen())
+            return;
+        buffer.force();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return amount of bytes used by records (including superseded ones)
+     * */
+    public synchronized int size() {
+        return writePosition;
+    }
+
+    private void ensureOpen() {
+        if(!channel.isOpen())
+            throw new IllegalStateException("epoch log " + file + " has been closed");
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int)crc.getValue();
+    }
+}
@@ -1,34 +1,110 @@
 package oracle.statements;
 
 import exceptions.InvalidStatementException;
+import exceptions.IotaAPICallFailedException;
 import iam.IAMKeywordReader;
 import iam.IAMReader;
 import jota.model.Transaction;
 import oracle.statements.hash.HashStatement;
 import oracle.statements.result.ResultStatement;
 import org.json.JSONObject;
+import tangle.JSONCodec;
 
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 public class StatementReader {
 
     private final StatementType statementType;
     private final IAMKeywordReader reader;
-    private final HashMap<Integer, Statement> knownStatementsByEpoch = new HashMap<>();
+    private final EpochCache<Statement> knownStatementsByEpoch = new EpochCache<>();
+    private EpochLog log; // NULL if the StatementStore is disabled
 
     public StatementReader(IAMReader generalReader, StatementType statementType) {
         reader = new IAMKeywordReader(generalReader, statementType.getIAMKeyword());
         this.statementType = statementType;
+        log = StatementStore.openLogIfEnabled(generalReader.getID() + "." + statementType.getIAMKeyword());
     }
 
-    public Statement read(List<Transaction> preload, int epoch) {
+    /**
+     * Reads the statement of a specific epoch. Statements are cached once read successfully.
+     * Synchronized because statements might also arrive via a TransactionFeed.
+     * @param preload resource of pre-fetched transactions for efficiency purposes, optional (set to null if not required)
+     * @param epoch   the epoch of the statement
+     * @return the statement, NULL if none was published
+     * @throws IotaAPICallFailedException if the node could not be queried, the statement is then not cached
+     * */
+    public synchronized Statement read(List<Transaction> preload, int epoch) {
 
-        if(knownStatementsByEpoch.containsKey(epoch))
-            return knownStatementsByEpoch.get(epoch);
+        Statement known = findKnownStatement(epoch);
+        if(known != null)
+            return known;
 
         // read JSONObject from tangle stream
         JSONObject jsonObject = preload != null ? reader.readFromSelection(epoch, preload) : reader.read(epoch);
+        return rememberStatement(epoch, jsonObject);
+    }
+
+    /**
+     * Reads the statements of many consecutive epochs with batched requests (e.g. to catch up after a restart).
+     * @param fromEpoch first epoch to read (inclusive)
+     * @param toEpoch   last epoch to read (exclusive)
+     * @return the statement of each epoch in order, NULL for epochs without statement
+     * @throws IotaAPICallFailedException if the node could not be queried
+     * */
+    public List<Statement> readRange(int fromEpoch, int toEpoch) {
+
+        // only the epochs between the first and the last unknown statement are read from the tangle
+        int firstUnknown = fromEpoch, lastUnknown = toEpoch-1;
+        while (firstUnknown < toEpoch && hasStatement(firstUnknown))
+            firstUnknown++;
+        while (lastUnknown >= firstUnknown && hasStatement(lastUnknown))
+            lastUnknown--;
+
+        List<Statement> statements = new ArrayList<>(Math.max(0, toEpoch - fromEpoch));
+        for(int epoch = fromEpoch; epoch < firstUnknown; epoch++)
+            statements.add(findKnownStatement(epoch));
+        if(firstUnknown <= lastUnknown) {
+            Iterator<JSONObject> iterator = reader.readRange(firstUnknown, lastUnknown+1);
+            for(int epoch = firstUnknown; iterator.hasNext(); epoch++)
+                statements.add(rememberStatement(epoch, iterator.next()));
+        }
+        for(int epoch = lastUnknown+1; epoch < toEpoch; epoch++)
+            statements.add(findKnownStatement(epoch));
+        return statements;
+    }
+
+    /**
+     * Looks the statement up in the memory cache and in the StatementStore (read-through).
+     * @return the known statement, NULL if it is not known (it might still have been published)
+     * */
+    private synchronized Statement findKnownStatement(int epoch) {
+
+        Statement statement = knownStatementsByEpoch.get(epoch);
+        if(statement != null || log == null)
+            return statement;
+
+        try {
+            byte[] stored = log.read(epoch);
+            if(stored == null)
+                return null;
+            statement = buildStatementFromJSON(JSONCodec.parse(new String(stored, StandardCharsets.UTF_8)));
+        } catch (RuntimeException e) {
+            // the store is only a cache, the statement will be read from the tangle instead
+            disableLog(e);
+            return null;
+        }
+        knownStatementsByEpoch.put(epoch, statement);
+        return statement;
+    }
+
+    private synchronized Statement rememberStatement(int epoch, JSONObject jsonObject) {
+
+        Statement known = findKnownStatement(epoch);
+        if(known != null)
+            return known;
 
         if(jsonObject == null)
             return null;
@@ -42,9 +118,41 @@ public class StatementReader {
         }
 
         knownStatementsByEpoch.put(epoch, statement);
+        storeStatement(epoch, statement);
         return statement;
     }
 
+    private void storeStatement(int epoch, Statement statement) {
+        // the log is shared by all readers of the same stream in this process
+        if(log == null || log.contains(epoch))
+            return;
+        try {
+            log.append(epoch, JSONCodec.write(statement.toJSON()).getBytes(StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            disableLog(e);
+        }
+    }
+
+    private void disableLog(RuntimeException e) {
+        e.printStackTrace();
+        log = null;
+    }
+
+    /**
+     * @param epoch the epoch of the statement
+     * @return TRUE if the statement is already known and reading it won't require tangle requests
+     * */
+    public synchronized boolean hasStatement(int epoch) {
+        return knownStatementsByEpoch.contains(epoch) || (log != null && log.contains(epoch));
+    }
+
+    /**
+     * @return usage of the memory cache of this reader
+     * */
+    public synchronized EpochCache.Statistics getCacheStatistics() {
+        return knownStatementsByEpoch.getStatistics();
+    }
+
     private Statement buildStatementFromJSON(JSONObject jsonObject) {
         switch (statementType) {
             case HASH_STATEMENT:
@@ -0,0 +1,86 @@
+package oracle.statements;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author microhash
+ *
+ * The StatementStore keeps the statements read by StatementReaders and the consensus determined by
+ * ConsensusBuilders in local EpochLogs (one file per oracle stream and statement type, one per qubic),
+ * so a restarted node does not have to read all past statements from the tangle again.
+ *
+ * The store is disabled by default. It has to be enabled with changeDirectory() before any readers are
+ * created, readers created while it is disabled only cache in memory.
+ * */
+public class StatementStore {
+
+    private static StatementStore instance = null;
+
+    private final File directory;
+    private final Map<String, EpochLog> openLogsByName = new HashMap<>();
+
+    /**
+     * @return the store, NULL if it is disabled
+     * */
+    public static synchronized StatementStore getInstance() {
+        return instance;
+    }
+
+    /**
+     * Enables the store or moves it to another directory. Logs of the previous directory are closed.
+     * @param directory directory for the log files (created if it does not exist), NULL to disable the store
+     * @throws UncheckedIOException if the directory cannot be created
+     * */
+    public static synchronized void changeDirectory(File directory) {
+        if(instance != null)
+            instance.closeAll();
+        if(directory != null && !directory.isDirectory() && !directory.mkdirs())
+            throw new UncheckedIOException(new IOException("could not create directory " + directory));
+        instance = directory != null ? new StatementStore(directory) : null;
+    }
+
+    /**
+     * @param name unique name of the log (e.g. the id of the oracle and the statement type)
+     * @return the log, NULL if the store is disabled or the log could not be opened
+     * */
+    public static EpochLog openLogIfEnabled(String name) {
+        StatementStore store = getInstance();
+        return store != null ? store.openLog(name) : null;
+    }
+
+    private StatementStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param name unique name of the log (e.g. the id of the oracle and the statement type)
+     * @return the log, NULL if it could not be opened (the caller continues with its memory cache only)
+     * */
+    public synchronized EpochLog openLog(String name) {
+        EpochLog log = openLogsByName.get(name);
+        if(log == null) {
+            try {
+                log = new EpochLog(new File(directory, name + ".log"));
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+            openLogsByName.put(name, log);
+        }
+        return log;
+    }
+
+    private synchronized void closeAll() {
+        for(EpochLog log : openLogsByName.values())
+            log.close();
+        openLogsByName.clear();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+}
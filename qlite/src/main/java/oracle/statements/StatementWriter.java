@@ -1,8 +1,11 @@
 package oracle.statements;
 
 import iam.IAMKeywordWriter;
+import iam.IAMWriteQueue;
 import iam.IAMWriter;
 
+import java.util.concurrent.CompletableFuture;
+
 public class StatementWriter<T extends Statement> {
 
     private final IAMKeywordWriter writer;
@@ -14,4 +17,12 @@ public class StatementWriter<T extends Statement> {
     public void write(T statement) {
         writer.publish(statement.getEpochIndex(), statement.toJSON());
     }
+
+    /**
+     * Publishes the statement in the background if the IAMWriter has a write queue.
+     * @see IAMWriter#writeAsync(iam.IAMIndex, org.json.JSONObject, IAMWriteQueue.Priority, long)
+     * */
+    public CompletableFuture<String> writeAsync(T statement, long deadlineUnixMillis) {
+        return writer.publishAsync(statement.getEpochIndex(), statement.toJSON(), IAMWriteQueue.Priority.CRITICAL, deadlineUnixMillis);
+    }
 }
\ No newline at end of file
@@ -71,6 +71,13 @@ public class HashStatement extends Statement {
         return hash;
     }
 
+    /**
+     * @return rating of each assembly participant's behaviour (-1 = negative, 0 = neutral, 1 = positive)
+     * */
+    public int[] getRatings() {
+        return ratings.clone();
+    }
+
     @Override
     public String getContentType() {
         return CONTENT_TYPE;
@@ -2,8 +2,10 @@ package oracle.statements.result;
 
 import iam.IAMReader;
 import jota.model.Transaction;
+import oracle.statements.Statement;
 import oracle.statements.StatementReader;
 import oracle.statements.StatementType;
+import oracle.statements.hash.HashStatement;
 import oracle.statements.hash.HashStatementReader;
 
 import java.util.List;
@@ -25,10 +27,24 @@ public class ResultStatementReader extends StatementReader {
     }
 
     @Override
-    public ResultStatement read(List<Transaction> preload, int epoch) {
+    public synchronized ResultStatement read(List<Transaction> preload, int epoch) {
         ResultStatement resultStatement = (ResultStatement)super.read(preload, epoch);
         if(resultStatement != null)
             resultStatement.setHashStatement(hashStatementReader.read(epoch));
         return resultStatement;
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads the result statements of many consecutive epochs together with their hash statements.
+     * @see StatementReader#readRange(int, int)
+     * */
+    @Override
+    public List<Statement> readRange(int fromEpoch, int toEpoch) {
+        List<Statement> resultStatements = super.readRange(fromEpoch, toEpoch);
+        List<Statement> hashStatements = hashStatementReader.readRange(fromEpoch, toEpoch);
+        for(int i = 0; i < resultStatements.size(); i++)
+            if(resultStatements.get(i) != null)
+                ((ResultStatement)resultStatements.get(i)).setHashStatement((HashStatement)hashStatements.get(i));
+        return resultStatements;
+    }
+}
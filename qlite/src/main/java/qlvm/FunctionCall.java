@@ -1,6 +1,7 @@
 package qlvm;
 
 import constants.GeneralConstants;
+import exceptions.IotaAPICallFailedException;
 import qlvm.exceptions.runtime.QLValueMaxLengthExceeded;
 import qlvm.exceptions.runtime.UnknownFunctionException;
 import qlvm.functions.*;
@@ -39,13 +40,20 @@ public final class FunctionCall {
      * @param qlvm the QLVM in which the function was called, provides the data for the actual function
      * @param functionName the name of the function (e.g. "qubic_fetch")
      * @param par normalized function parameters
-     * @return return value of the actual function or NULL if function not found
+     * @return return value of the actual function, NULL if the tangle could not be queried
      * */
     public static String call(QLVM qlvm, String functionName, String[] par) {
 
         for(Function f : functions)
             if(f.getName().equals(functionName)) {
-                String ret = f.call(qlvm, par);
+                String ret;
+                try {
+                    ret = f.call(qlvm, par);
+                } catch (IotaAPICallFailedException e) {
+                    // like for data which has not been published, the code continues with nil instead of aborting the run
+                    e.printStackTrace();
+                    return null;
+                }
                 if(ret != null && ret.length() > GeneralConstants.QLVM_MAX_VALUE_LENGTH)
                     throw new QLValueMaxLengthExceeded(ret);
                 return ret;
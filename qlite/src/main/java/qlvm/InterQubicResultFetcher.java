@@ -1,78 +1,194 @@
 package qlvm;
 
 import constants.GeneralConstants;
+import exceptions.IotaAPICallFailedException;
 import iam.IAMIndex;
 import oracle.Assembly;
 import oracle.OracleReader;
 import oracle.QuorumBasedResult;
-import oracle.statements.hash.HashStatementIAMIndex;
-import oracle.statements.result.ResultStatementIAMIndex;
+import oracle.statements.EpochCache;
 import qubic.QubicReader;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 /**
  * @author microhash
  *
  * This class allows to fetch results from other qubics not watched by the OracleWriter.
+ *
+ * Assemblies are shared process-wide, so all QLVM runs on this node fetching from the same qubic use one view
+ * of it. An assembly is only created once even if many runs request it at the same moment (the others wait
+ * for it instead of reading the qubic transaction and the public keys again). Concurrent requests for the same
+ * consensus (same qubic and epoch or IAMIndex) are merged as well.
  * */
 public class InterQubicResultFetcher {
 
-    private static final HashMap<String, Assembly> knownAssemblies = new HashMap<>();
+    private static int maxKnownAssemblies = 64;
+
+    // least recently used assemblies are dropped first, each keeps the readers and caches of a whole assembly
+    private static final Map<String, CompletableFuture<Assembly>> knownAssemblies = new LinkedHashMap<String, CompletableFuture<Assembly>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<Assembly>> eldest) {
+            return size() > maxKnownAssemblies;
+        }
+    };
+
+    // consensus currently being determined, removed once determined (the ConsensusBuilder keeps the result)
+    private static final Map<String, CompletableFuture<QuorumBasedResult>> consensusInFlight = new HashMap<>();
+
+    /**
+     * @param maxKnownAssemblies maximum amount of assemblies of other qubics kept in memory
+     * */
+    public static void changeMaxKnownAssemblies(int maxKnownAssemblies) {
+        if(maxKnownAssemblies <= 0)
+            throw new IllegalArgumentException("parameter 'maxKnownAssemblies' must be positive");
+        synchronized (knownAssemblies) {
+            InterQubicResultFetcher.maxKnownAssemblies = maxKnownAssemblies;
+        }
+    }
+
+    /**
+     * @param qubicId iam stream id of qubic
+     * @return memory usage of the caches of the assembly of that qubic, EMPTY if it is not known (yet)
+     * */
+    public static EpochCache.Statistics getCacheStatistics(String qubicId) {
+        CompletableFuture<Assembly> assembly;
+        synchronized (knownAssemblies) {
+            assembly = knownAssemblies.get(qubicId);
+        }
+        return assembly != null && assembly.isDone() && !assembly.isCompletedExceptionally()
+                ? assembly.join().getCacheStatistics()
+                : EpochCache.Statistics.EMPTY;
+    }
 
     /**
      * Fetches the QuorumBasedResult from any qubic.
      * @param qubicId     iam stream id of qubic
      * @param epochIndex  index of the epoch of which the result shall be determined
      * @return the fetched QuorumBasedResult
+     * @throws IotaAPICallFailedException if the node could not be queried
      * */
     public static QuorumBasedResult fetchResult(String qubicId, int epochIndex) {
-        Assembly assembly = getAssembly(qubicId);
-        return findConsensus(assembly, epochIndex);
+        Assembly assembly = getAssembly(qubicId, () -> new QubicReader(qubicId));
+        return fetchResult(assembly, epochIndex);
     }
 
+    /**
+     * Determines the consensus of the oracles of any qubic on the messages at a specific IAMIndex.
+     * @param qubicId iam stream id of qubic
+     * @param index   the index of the messages to vote on
+     * @return the fetched QuorumBasedResult
+     * @throws IotaAPICallFailedException if the node could not be queried
+     * */
     public static QuorumBasedResult fetchQubicConsensus(String qubicId, IAMIndex index) {
-        Assembly assembly = getAssembly(qubicId);
-        return assembly.getConsensusBuilder().buildIAMConsensus(index);
+        Assembly assembly = getAssembly(qubicId, () -> new QubicReader(qubicId));
+        return determineOnce(qubicId + "/" + index, () -> assembly.getConsensusBuilder().buildIAMConsensus(index));
     }
+
     /**
      * Fetches the QuorumBasedResult from any qubic.
      * @param qubicReader QubicReader for qubic to fetch from
      * @param epochIndex  index of the epoch of which the result shall be determined
      * @return the fetched QuorumBasedResult
+     * @throws IotaAPICallFailedException if the node could not be queried
      * */
     public static QuorumBasedResult fetchResult(QubicReader qubicReader, int epochIndex) {
-        Assembly assembly = getAssembly(qubicReader);
-        return findConsensus(assembly, epochIndex);
+        Assembly assembly = getAssembly(qubicReader.getID(), () -> qubicReader);
+        return fetchResult(assembly, epochIndex);
+    }
+
+    private static QuorumBasedResult fetchResult(Assembly assembly, int epochIndex) {
+        if(assembly.getConsensusBuilder().hasAlreadyDeterminedQuorumBasedResult(epochIndex))
+            return assembly.getConsensusBuilder().buildConsensus(epochIndex);
+        return determineOnce(assembly.getQubicReader().getID() + "/" + epochIndex, () -> findConsensus(assembly, epochIndex));
     }
 
     private static QuorumBasedResult findConsensus(Assembly assembly, int epochIndex) {
-        List<OracleReader> selection = assembly.selectRandomOracleReaders(GeneralConstants.QUORUM_MAX_ORACLE_SELECTION_SIZE);
-        if(!assembly.getConsensusBuilder().hasAlreadyDeterminedQuorumBasedResult(epochIndex)) {
-            assembly.fetchStatements(selection, new HashStatementIAMIndex(epochIndex));
-            assembly.fetchStatements(selection, new ResultStatementIAMIndex(epochIndex));
-        }
+        // the consensus builder reads the hash and result statements of the selection in one batched lookup
+        List<OracleReader> selection = assembly.selectOracleReaders(epochIndex, GeneralConstants.QUORUM_MAX_ORACLE_SELECTION_SIZE);
         return assembly.getConsensusBuilder().buildConsensus(selection, epochIndex);
     }
 
-    private static Assembly getAssembly(String qubicID) {
-        return knownAssemblies.containsKey(qubicID)
-            ? knownAssemblies.get(qubicID)
-            : createAssembly(new QubicReader(qubicID));
+    /**
+     * Determines the consensus in the calling thread unless another thread is already determining it.
+     * @param key         identifies the consensus (qubic and epoch or IAMIndex)
+     * @param determiner  determines the consensus
+     * @return the consensus determined by this or the other thread
+     * */
+    private static QuorumBasedResult determineOnce(String key, Supplier<QuorumBasedResult> determiner) {
+        CompletableFuture<QuorumBasedResult> inFlight;
+        CompletableFuture<QuorumBasedResult> own = new CompletableFuture<>();
+        synchronized (consensusInFlight) {
+            inFlight = consensusInFlight.putIfAbsent(key, own);
+        }
+        if(inFlight != null)
+            return join(inFlight);
+
+        try {
+            QuorumBasedResult result = determiner.get();
+            own.complete(result);
+            return result;
+        } catch (Throwable t) {
+            // also on errors, threads waiting for this consensus must not wait forever
+            own.completeExceptionally(t);
+            throw t;
+        } finally {
+            synchronized (consensusInFlight) {
+                consensusInFlight.remove(key);
+            }
+        }
     }
 
-    private static Assembly getAssembly(QubicReader qubicReader) {
-        return knownAssemblies.containsKey(qubicReader.getID())
-                ? knownAssemblies.get(qubicReader.getID())
-                : createAssembly(qubicReader);
+    /**
+     * @param qubicID           iam stream id of qubic
+     * @param qubicReaderSource provides the QubicReader if the assembly has to be created
+     * @return the shared assembly of the qubic, created by the calling thread unless another thread is already creating it
+     * */
+    private static Assembly getAssembly(String qubicID, Supplier<QubicReader> qubicReaderSource) {
+        CompletableFuture<Assembly> known;
+        CompletableFuture<Assembly> own = new CompletableFuture<>();
+        synchronized (knownAssemblies) {
+            known = knownAssemblies.get(qubicID);
+            if(known == null)
+                knownAssemblies.put(qubicID, own);
+        }
+        if(known != null)
+            return join(known);
+
+        try {
+            Assembly assembly = createAssembly(qubicReaderSource.get());
+            own.complete(assembly);
+            return assembly;
+        } catch (Throwable t) {
+            // failed creations are not remembered, the next request tries again
+            synchronized (knownAssemblies) {
+                knownAssemblies.remove(qubicID, own);
+            }
+            own.completeExceptionally(t);
+            throw t;
+        }
     }
 
     private static Assembly createAssembly(QubicReader qr) {
         List<String> assemblyList = qr.getAssemblyList();
         Assembly assembly = new Assembly(qr);
         assembly.addOracles(assemblyList);
-        knownAssemblies.put(qr.getID(), assembly);
         return assembly;
     }
-}
\ No newline at end of file
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof Error)
+                throw (Error)e.getCause();
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : e;
+        }
+    }
+}
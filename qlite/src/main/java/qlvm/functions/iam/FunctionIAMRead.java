@@ -4,7 +4,7 @@ import iam.IAMIndex;
 import org.json.JSONObject;
 import qlvm.QLVM;
 import qlvm.functions.Function;
-import iam.IAMReader;
+import iam.IAMReaderRegistry;
 
 public class FunctionIAMRead extends Function {
 
@@ -16,7 +16,7 @@ public class FunctionIAMRead extends Function {
         String iamID = par[0].substring(1, par[0].length()-1);
         int position = parseStringToNumber(par[1]).intValue();
         String keyword = par.length == 2 ? "" : par[2].substring(1, par[2].length()-1);
-        JSONObject o = new IAMReader(iamID).read(new IAMIndex(keyword, position));
+        JSONObject o = IAMReaderRegistry.getInstance().get(iamID).read(new IAMIndex(keyword, position));
         return o == null ? null : o.toString();
     }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package qubic;
 
 import constants.GeneralConstants;
 import constants.TangleJSONConstants;
+import exceptions.IotaAPICallFailedException;
 import exceptions.NoQubicTransactionException;
 import exceptions.UnsupportedVersionException;
 import iam.exceptions.CorruptIAMStreamException;
@@ -9,6 +10,7 @@ import exceptions.InvalidQubicTransactionException;
 import org.apache.commons.lang3.StringUtils;
 import org.json.JSONException;
 import iam.IAMReader;
+import iam.IAMReaderRegistry;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import tangle.TangleAPI;
@@ -39,10 +41,11 @@ public class QubicReader {
      * Creates the IAMReader for the qubic stream and fetches the qubic transaction.
      *
      * @param id IAMStream identity of qubic
+     * @throws IotaAPICallFailedException if the node could not be queried
      */
     public QubicReader(String id) throws InvalidQubicTransactionException, CorruptIAMStreamException {
         this.id = id;
-        reader = new IAMReader(id);
+        reader = IAMReaderRegistry.getInstance().get(id);
         JSONObject qubicTransaction = fetchQubicTransaction();
         specification = new QubicSpecification(qubicTransaction);
     }
@@ -58,6 +61,7 @@ public class QubicReader {
      * Fetches the assembly transaction if necessary.
      *
      * @return ArrayList of oracle IAMStream identities, NULL if no assembly tx published
+     * @throws IotaAPICallFailedException if the node could not be queried, this is NOT the same as a missing assembly transaction
      */
     public List<String> getAssemblyList() {
         if (assemblyList == null)
@@ -92,6 +96,7 @@ public class QubicReader {
     /**
      * Searches the tangle for recently promoted qubics.
      * @return ArrayList of all found qubics
+     * @throws IotaAPICallFailedException if the node could not be queried
      */
     public static List<QubicReader> findPromotedQubics() {
         ArrayList<QubicReader> qubics = new ArrayList<>();
@@ -1,11 +1,13 @@
 package qubic;
 
 import constants.TangleJSONConstants;
+import exceptions.IotaAPICallFailedException;
 import exceptions.NoQubicTransactionException;
 import iam.IAMIndex;
 import iam.IAMWriter;
 import org.json.JSONException;
 import org.json.JSONObject;
+import tangle.JSONCodec;
 import tangle.TangleAPI;
 import tangle.TryteTool;
 
@@ -63,6 +65,7 @@ public class QubicWriter {
 
     /**
      * Publishes the qubic transaction to the IAMStream.
+     * @throws IotaAPICallFailedException if the transaction could not be sent
      * */
     public synchronized void publishQubicTransaction() {
 
@@ -78,6 +81,7 @@ public class QubicWriter {
 
     /**
      * Publicly promotes the qubic transaction on the tangle to attract oracles for its assembly.
+     * @throws IotaAPICallFailedException if the transaction could not be sent
      * */
     public void promote() {
         String address = TryteTool.buildCurrentQubicPromotionAddress();
@@ -87,6 +91,7 @@ public class QubicWriter {
     /**
      * Publishes the assembly transaction to the IAMStream. The assembly will consist
      * of all oracles added via addOracle().
+     * @throws IotaAPICallFailedException if the transaction could not be sent
      * */
     public synchronized void publishAssemblyTransaction() {
         throwExceptionIfCannotPublishAssemblyTransaction();
@@ -102,6 +107,7 @@ public class QubicWriter {
     /**
      * Fetches all applications for this qubic
      * @return the fetched applications
+     * @throws IotaAPICallFailedException if the node could not be queried
      * */
     public List<JSONObject> fetchApplications() {
         Collection<String> transactionMessagesOnApplicationAddress = TangleAPI.getInstance().readTransactionsByAddress(null, getID(), true).values();
@@ -112,7 +118,7 @@ public class QubicWriter {
         List<JSONObject> applications = new LinkedList<>();
         for(String transactionMessage : uncheckedTransactionMessages) {
             try {
-                applications.add(new JSONObject(transactionMessage));
+                applications.add(JSONCodec.parse(transactionMessage));
             } catch (JSONException e) {  }
         }
         return applications;
@@ -0,0 +1,147 @@
+package tangle;
+
+import jota.model.Transaction;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * @author microhash
+ *
+ * The AddressLookupCoalescer merges concurrent findTransactionsByAddresses() requests into
+ * a single API call. Requests arriving within a short window are collected and sent together,
+ * the results are then distributed back to each requester. Lookups for addresses which are
+ * already in flight are not requested a second time. This is useful when many oracles on the
+ * same node read the same statement addresses at the same moment.
+ * */
+public class AddressLookupCoalescer {
+
+    private static final long DEFAULT_WINDOW_MILLIS = 50;
+    private static final int MAX_ADDRESSES_PER_REQUEST = 500;
+    private static final ScheduledExecutorService flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "qlite-coalescer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static AddressLookupCoalescer instance = new AddressLookupCoalescer(DEFAULT_WINDOW_MILLIS);
+
+    private final long windowMillis;
+    private final Map<String, CompletableFuture<List<Transaction>>> inFlightByAddress = new HashMap<>();
+    private Map<String, CompletableFuture<List<Transaction>>> nextBatch = new LinkedHashMap<>();
+    private boolean flushScheduled = false;
+
+    public static AddressLookupCoalescer getInstance() {
+        return instance;
+    }
+
+    /**
+     * Changes the window in which concurrent requests are merged.
+     * @param windowMillis milliseconds to wait for further requests before sending a batch, 0 to send immediately
+     * */
+    public static void changeWindow(long windowMillis) {
+        instance = new AddressLookupCoalescer(windowMillis);
+    }
+
+    public AddressLookupCoalescer(long windowMillis) {
+        if(windowMillis < 0)
+            throw new IllegalArgumentException("parameter 'windowMillis' cannot be negative");
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Blocking counterpart to lookup(). Drop-in replacement for TangleAPI.findTransactionsByAddresses().
+     * @param addresses the addresses to check
+     * @return all transactions found on these addresses, NULL if the api call failed
+     * */
+    public List<Transaction> findTransactionsByAddresses(String[] addresses) {
+        try {
+            return lookup(addresses).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : e;
+        }
+    }
+
+    /**
+     * Queues the addresses for the next batched request. Addresses which are already queued or in flight are shared.
+     * @param addresses the addresses to check
+     * @return future of all transactions found on these addresses, completes with NULL if the api call failed
+     * */
+    public CompletableFuture<List<Transaction>> lookup(String[] addresses) {
+        List<CompletableFuture<List<Transaction>>> futures = new LinkedList<>();
+        synchronized (this) {
+            for(String address : new LinkedHashSet<>(Arrays.asList(addresses)))
+                futures.add(joinLookupOfAddress(address));
+            scheduleFlushIfNecessary();
+        }
+        return mergeFutures(futures);
+    }
+
+    private CompletableFuture<List<Transaction>> joinLookupOfAddress(String address) {
+        CompletableFuture<List<Transaction>> future = inFlightByAddress.get(address);
+        if(future == null) {
+            future = new CompletableFuture<>();
+            inFlightByAddress.put(address, future);
+            nextBatch.put(address, future);
+        }
+        return future;
+    }
+
+    private void scheduleFlushIfNecessary() {
+        if(flushScheduled || nextBatch.isEmpty())
+            return;
+        flushScheduled = true;
+        flushScheduler.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        Map<String, CompletableFuture<List<Transaction>>> batch;
+        synchronized (this) {
+            batch = nextBatch;
+            nextBatch = new LinkedHashMap<>();
+            flushScheduled = false;
+        }
+
+        List<String> addresses = new ArrayList<>(batch.keySet());
+        for(int from = 0; from < addresses.size(); from += MAX_ADDRESSES_PER_REQUEST) {
+            List<String> chunk = addresses.subList(from, Math.min(addresses.size(), from + MAX_ADDRESSES_PER_REQUEST));
+            sendRequest(chunk.toArray(new String[0]), batch);
+        }
+    }
+
+    private void sendRequest(String[] addresses, Map<String, CompletableFuture<List<Transaction>>> batch) {
+        AsyncTangleAPI.getInstance().findTransactionsByAddresses(addresses).whenComplete((transactions, throwable) -> {
+            Map<String, List<Transaction>> transactionsByAddress = transactions != null ? groupByAddress(transactions) : null;
+            for(String address : addresses) {
+                CompletableFuture<List<Transaction>> future = batch.get(address);
+                synchronized (this) {
+                    inFlightByAddress.remove(address, future);
+                }
+                if(throwable != null)
+                    future.completeExceptionally(throwable);
+                else
+                    future.complete(transactionsByAddress == null ? null : transactionsByAddress.getOrDefault(address, new LinkedList<>()));
+            }
+        });
+    }
+
+    private static Map<String, List<Transaction>> groupByAddress(List<Transaction> transactions) {
+        Map<String, List<Transaction>> transactionsByAddress = new HashMap<>();
+        for(Transaction transaction : transactions)
+            transactionsByAddress.computeIfAbsent(transaction.getAddress(), address -> new LinkedList<>()).add(transaction);
+        return transactionsByAddress;
+    }
+
+    private static CompletableFuture<List<Transaction>> mergeFutures(List<CompletableFuture<List<Transaction>>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            List<Transaction> merged = new LinkedList<>();
+            for(CompletableFuture<List<Transaction>> future : futures) {
+                List<Transaction> transactions = future.join();
+                if(transactions == null)
+                    return null;
+                merged.addAll(transactions);
+            }
+            return merged;
+        });
+    }
+}
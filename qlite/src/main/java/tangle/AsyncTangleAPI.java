@@ -0,0 +1,148 @@
+package tangle;
+
+import jota.model.Transaction;
+import jota.utils.TrytesConverter;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author microhash
+ *
+ * The AsyncTangleAPI is the non-blocking counterpart to the TangleAPI. Each request is run
+ * on a configurable executor and immediately returns a CompletableFuture. Cancelling such a
+ * future interrupts the underlying request. A deadline completes it with a TimeoutException.
+ * @see TangleAPI
+ * */
+public class AsyncTangleAPI {
+
+    private static final int DEFAULT_THREAD_POOL_SIZE = 16;
+    private static final ScheduledExecutorService deadlineScheduler = Executors.newSingleThreadScheduledExecutor(createDaemonThreadFactory("qlite-deadline"));
+
+    private static AsyncTangleAPI instance = new AsyncTangleAPI(Executors.newFixedThreadPool(DEFAULT_THREAD_POOL_SIZE, createDaemonThreadFactory("qlite-tangle")), 0);
+
+    private final ExecutorService executor;
+    private final long deadlineMillis;
+
+    public static AsyncTangleAPI getInstance() {
+        return instance;
+    }
+
+    /**
+     * Changes the executor on which all future requests will be run. The old executor is not shut down.
+     * @param executor       executor to run the requests on
+     * @param deadlineMillis default deadline for each request in milliseconds, 0 for no deadline
+     * */
+    public static void changeExecutor(ExecutorService executor, long deadlineMillis) {
+        instance = new AsyncTangleAPI(executor, deadlineMillis);
+    }
+
+    /**
+     * @param executor       executor to run the requests on
+     * @param deadlineMillis default deadline for each request in milliseconds, 0 for no deadline
+     * */
+    public AsyncTangleAPI(ExecutorService executor, long deadlineMillis) {
+        if(executor == null)
+            throw new NullPointerException("parameter 'executor' is null");
+        if(deadlineMillis < 0)
+            throw new IllegalArgumentException("parameter 'deadlineMillis' cannot be negative");
+        this.executor = executor;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * Non-blocking counterpart to TangleAPI.sendTrytes().
+     * @param address      the address to which the transaction shall be attached
+     * @param tryteMessage the transaction message (in trytes)
+     * @return future of the transaction hash of the sent transaction
+     * */
+    public CompletableFuture<String> sendTrytes(String address, String tryteMessage) {
+        return submit(() -> TangleAPI.getInstance().sendTrytes(address, tryteMessage));
+    }
+
+    public CompletableFuture<String> sendTrytes(String tryteMessage) {
+        return sendTrytes(TryteTool.NINE_ADDRESS, tryteMessage);
+    }
+
+    public CompletableFuture<String> sendMessage(String message) {
+        return sendMessage(TryteTool.NINE_ADDRESS, message);
+    }
+
+    public CompletableFuture<String> sendMessage(String address, String message) {
+        return sendTrytes(address, TrytesConverter.toTrytes(message));
+    }
+
+    /**
+     * Non-blocking counterpart to TangleAPI.findTransactionsByAddresses().
+     * @param addresses the addresses to check
+     * @return future of all found transactions
+     * */
+    public CompletableFuture<List<Transaction>> findTransactionsByAddresses(String[] addresses) {
+        return submit(() -> TangleAPI.getInstance().findTransactionsByAddresses(addresses));
+    }
+
+    /**
+     * Non-blocking counterpart to TangleAPI.readTransactionTrytes().
+     * @param hash the hash of the requested transaction
+     * @return future of the transaction message trytes, completes with NULL if not found
+     * */
+    public CompletableFuture<String> readTransactionTrytes(String hash) {
+        return submit(() -> TangleAPI.getInstance().readTransactionTrytes(hash));
+    }
+
+    public CompletableFuture<String> readTransactionMessage(String hash) {
+        return submit(() -> TangleAPI.getInstance().readTransactionMessage(hash));
+    }
+
+    /**
+     * Non-blocking counterpart to TangleAPI.getBalance().
+     * @param address the address to check
+     * @return future of the balance in iotas
+     * */
+    public CompletableFuture<Long> getBalance(String address) {
+        return submit(() -> TangleAPI.getInstance().getBalance(address));
+    }
+
+    /**
+     * Completes a future exceptionally with a TimeoutException if it has not completed in time.
+     * If the future was created by this class, the underlying request is interrupted as well.
+     * @param future  the future to limit
+     * @param timeout maximum time to wait for completion
+     * @param unit    time unit of parameter timeout
+     * @return the very same future (for chaining)
+     * */
+    public static <T> CompletableFuture<T> withDeadline(CompletableFuture<T> future, long timeout, TimeUnit unit) {
+        ScheduledFuture<?> expiration = deadlineScheduler.schedule(
+                () -> future.completeExceptionally(new TimeoutException("deadline of " + unit.toMillis(timeout) + "ms exceeded")),
+                timeout, unit);
+        future.whenComplete((result, throwable) -> expiration.cancel(false));
+        return future;
+    }
+
+    private <T> CompletableFuture<T> submit(Callable<T> request) {
+        CompletableFuture<T> promise = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            try {
+                promise.complete(request.call());
+            } catch (Throwable t) {
+                promise.completeExceptionally(t);
+            }
+        });
+        // interrupts the request if the promise was cancelled or has exceeded its deadline
+        promise.whenComplete((result, throwable) -> {
+            if(throwable != null)
+                task.cancel(true);
+        });
+        return deadlineMillis > 0 ? withDeadline(promise, deadlineMillis, TimeUnit.MILLISECONDS) : promise;
+    }
+
+    private static ThreadFactory createDaemonThreadFactory(String namePrefix) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + "-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
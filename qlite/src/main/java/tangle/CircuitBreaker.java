@@ -0,0 +1,89 @@
+package tangle;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author microhash
+ *
+ * The CircuitBreaker protects a single node endpoint. After too many consecutive failures
+ * the circuit opens and all calls to the endpoint fail immediately without reaching the node.
+ * Once a cool-down has passed, a single trial call is let through (half-open). Its outcome
+ * decides whether the circuit closes again or stays open for another cool-down.
+ * */
+public class CircuitBreaker {
+
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final long DEFAULT_OPEN_DURATION_MILLIS = 30000;
+
+    private static final Map<String, CircuitBreaker> circuitBreakersByEndpoint = new HashMap<>();
+
+    private final String endpoint;
+    private final int failureThreshold;
+    private final long openDurationMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt = 0;
+
+    /**
+     * @param endpoint the node address, e.g. "https://nodes.devnet.thetangle.org:443"
+     * @return the circuit breaker shared by all API instances talking to this endpoint
+     * */
+    public static synchronized CircuitBreaker forEndpoint(String endpoint) {
+        return circuitBreakersByEndpoint.computeIfAbsent(endpoint,
+                e -> new CircuitBreaker(e, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION_MILLIS));
+    }
+
+    public CircuitBreaker(String endpoint, int failureThreshold, long openDurationMillis) {
+        if(failureThreshold < 1)
+            throw new IllegalArgumentException("parameter 'failureThreshold' must be at least 1");
+        this.endpoint = endpoint;
+        this.failureThreshold = failureThreshold;
+        this.openDurationMillis = openDurationMillis;
+    }
+
+    /**
+     * @return TRUE if a call may be sent to the endpoint, FALSE if it shall fail immediately
+     * */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if(System.currentTimeMillis() - openedAt < openDurationMillis)
+                    return false;
+                state = State.HALF_OPEN;
+                return true;
+            case HALF_OPEN:
+                return false; // trial call is still running
+            default:
+                throw new IllegalStateException("unknown state: " + state.name());
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if(state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    public synchronized boolean isOpen() {
+        return state != State.CLOSED;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+}
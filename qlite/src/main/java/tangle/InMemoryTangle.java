@@ -0,0 +1,174 @@
+package tangle;
+
+import exceptions.IotaAPICallFailedException;
+import jota.error.ArgumentException;
+import jota.model.Transaction;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author microhash
+ *
+ * The InMemoryTangle is a local, in-process stand-in for an iota node. Transactions are indexed
+ * by address and hash in memory. Hashes are derived deterministically from a seed, the order of
+ * attachment and the transaction content, so simulations are reproducible. Network latency and
+ * proof-of-work cost can be simulated with configurable delays. It also acts as TransactionFeed
+ * and pushes every attached transaction to the listeners of its address.
+ * Use TangleAPI.changeBackend() to activate it.
+ * */
+public class InMemoryTangle extends TransactionFeed implements TangleBackend {
+
+    private static final String NODE_ADDRESS = "memory://localhost:0";
+
+    private final long seed;
+    private final long lookupLatencyMillis;
+    private final long powMillis;
+
+    private final AtomicLong attachmentCounter = new AtomicLong();
+    private final Map<String, Transaction> transactionsByHash = new ConcurrentHashMap<>();
+    private final Map<String, List<Transaction>> transactionsByAddress = new ConcurrentHashMap<>();
+    private final Map<String, Long> balancesByAddress = new ConcurrentHashMap<>();
+    private final ExecutorService feedDispatcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "qlite-memory-feed");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates an InMemoryTangle without simulated delays.
+     * */
+    public InMemoryTangle() {
+        this(0, 0, 0);
+    }
+
+    /**
+     * @param seed                seed from which the transaction hashes are derived
+     * @param lookupLatencyMillis simulated delay of each request
+     * @param powMillis           simulated proof-of-work cost of each attached transaction
+     * */
+    public InMemoryTangle(long seed, long lookupLatencyMillis, long powMillis) {
+        if(lookupLatencyMillis < 0 || powMillis < 0)
+            throw new IllegalArgumentException("simulated delays cannot be negative");
+        this.seed = seed;
+        this.lookupLatencyMillis = lookupLatencyMillis;
+        this.powMillis = powMillis;
+    }
+
+    @Override
+    public String attach(String address, String tryteMessage, String tag, int mwm) throws ArgumentException {
+        if(address == null || address.length() != TryteTool.TRYTES_PER_ADDRESS || !TryteTool.isTryteSequence(address))
+            throw new ArgumentException("invalid address: " + address);
+        if(tryteMessage.length() > TryteTool.TRYTES_PER_TRANSACTION_MESSAGE || !TryteTool.isTryteSequence(tryteMessage))
+            throw new ArgumentException("invalid message trytes");
+
+        simulateDelay(lookupLatencyMillis + powMillis);
+
+        Transaction transaction = new Transaction();
+        transaction.setAddress(address);
+        transaction.setSignatureFragments(StringUtils.rightPad(tryteMessage, TryteTool.TRYTES_PER_TRANSACTION_MESSAGE, '9'));
+        transaction.setTag(tag);
+        transaction.setTimestamp(System.currentTimeMillis() / 1000);
+        transaction.setHash(deriveHash(attachmentCounter.incrementAndGet(), address, tryteMessage));
+
+        transactionsByHash.put(transaction.getHash(), transaction);
+        transactionsByAddress.computeIfAbsent(address, a -> Collections.synchronizedList(new ArrayList<>())).add(transaction);
+        // delivered asynchronously (in order of attachment) like the feed of a real node
+        feedDispatcher.execute(() -> publish(transaction));
+        return transaction.getHash();
+    }
+
+    @Override
+    public List<Transaction> findTransactionsByAddresses(String[] addresses) {
+        simulateDelay(lookupLatencyMillis);
+        List<Transaction> found = new LinkedList<>();
+        for(String address : new LinkedHashSet<>(Arrays.asList(addresses))) {
+            List<Transaction> transactionsOnAddress = transactionsByAddress.get(address);
+            if(transactionsOnAddress != null) {
+                synchronized (transactionsOnAddress) {
+                    found.addAll(transactionsOnAddress);
+                }
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public List<Transaction> findTransactionsByHashes(String[] hashes) {
+        simulateDelay(lookupLatencyMillis);
+        List<Transaction> found = new ArrayList<>(hashes.length);
+        for(String hash : hashes) {
+            Transaction transaction = transactionsByHash.get(hash);
+            found.add(transaction != null ? transaction : createUnknownTransaction());
+        }
+        return found;
+    }
+
+    @Override
+    public long getBalance(String address) {
+        simulateDelay(lookupLatencyMillis);
+        return balancesByAddress.getOrDefault(address, 0L);
+    }
+
+    @Override
+    public String getNodeAddress() {
+        return NODE_ADDRESS;
+    }
+
+    public void setBalance(String address, long balance) {
+        balancesByAddress.put(address, balance);
+    }
+
+    /**
+     * @return amount of transactions attached so far
+     * */
+    public int size() {
+        return transactionsByHash.size();
+    }
+
+    /**
+     * Mimics the node's response for unknown hashes: a transaction consisting of '9' trytes only.
+     * */
+    private static Transaction createUnknownTransaction() {
+        Transaction transaction = new Transaction();
+        transaction.setHash(TryteTool.NINE_ADDRESS);
+        transaction.setAddress(TryteTool.NINE_ADDRESS);
+        transaction.setSignatureFragments(StringUtils.repeat('9', TryteTool.TRYTES_PER_TRANSACTION_MESSAGE));
+        return transaction;
+    }
+
+    private String deriveHash(long attachmentIndex, String address, String tryteMessage) {
+        MessageDigest digest = createDigest();
+        digest.update(ByteBuffer.allocate(2 * Long.BYTES).putLong(seed).putLong(attachmentIndex).array());
+        digest.update(address.getBytes(StandardCharsets.US_ASCII));
+        digest.update(tryteMessage.getBytes(StandardCharsets.US_ASCII));
+        return TryteTool.bytesToTrytes(digest.digest()).substring(0, TryteTool.TRYTES_PER_HASH);
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-512");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void simulateDelay(long millis) {
+        if(millis <= 0)
+            return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IotaAPICallFailedException("interrupted during simulated delay", e);
+        }
+    }
+}
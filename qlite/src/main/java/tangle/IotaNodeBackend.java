@@ -0,0 +1,73 @@
+package tangle;
+
+import cfb.pearldiver.PearlDiverLocalPoW;
+import jota.IotaAPI;
+import jota.dto.response.GetBalancesResponse;
+import jota.dto.response.SendTransferResponse;
+import jota.error.ArgumentException;
+import jota.model.Input;
+import jota.model.Transaction;
+import jota.model.Transfer;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * @author microhash
+ *
+ * The IotaNodeBackend connects the TangleAPI to a remote iota node via the IotaAPI of the iota library.
+ * */
+public class IotaNodeBackend implements TangleBackend {
+
+    private final IotaAPI wrappedAPI;
+
+    /**
+     * @param nodeAddress address of the node to connect to
+     * @param localPow    TRUE: perform proof-of-work locally, FALSE: perform pow on remote iota node
+     * */
+    public IotaNodeBackend(NodeAddress nodeAddress, boolean localPow) {
+
+        IotaAPI.Builder builder = new IotaAPI.Builder()
+                .protocol(nodeAddress.getProtocol())
+                .host(nodeAddress.getHost())
+                .port(nodeAddress.getPort());
+
+        if(localPow)
+            builder.localPoW(new PearlDiverLocalPoW());
+
+        wrappedAPI = new WrappedIotaAPI(builder, RetryPolicy.DEFAULT, CircuitBreaker.forEndpoint(nodeAddress.buildAddress()));
+    }
+
+    @Override
+    public String attach(String address, String tryteMessage, String tag, int mwm) throws ArgumentException {
+        List<Input> inputs = new LinkedList<>();
+        List<Transfer> transfers = new LinkedList<>();
+        transfers.add(new Transfer(address, 0, tryteMessage, tag));
+
+        SendTransferResponse response = wrappedAPI.sendTransfer("", 1, 3, mwm, transfers, inputs, "", true, false);
+        return response.getTransactions().get(0).getHash();
+    }
+
+    @Override
+    public List<Transaction> findTransactionsByAddresses(String[] addresses) throws ArgumentException {
+        return wrappedAPI.findTransactionObjectsByAddresses(addresses);
+    }
+
+    @Override
+    public List<Transaction> findTransactionsByHashes(String[] hashes) throws ArgumentException {
+        return wrappedAPI.findTransactionsObjectsByHashes(hashes);
+    }
+
+    @Override
+    public long getBalance(String address) throws ArgumentException {
+        LinkedList<String> addresses = new LinkedList<>();
+        addresses.add(address);
+        GetBalancesResponse balancesResponse = wrappedAPI.getBalances(1, addresses);
+        return Long.parseLong(balancesResponse.getBalances()[0]);
+    }
+
+    @Override
+    public String getNodeAddress() {
+        return wrappedAPI.getProtocol() + "://" + wrappedAPI.getHost() + ":" + wrappedAPI.getPort();
+    }
+}
@@ -0,0 +1,344 @@
+package tangle;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.*;
+
+/**
+ * @author microhash
+ *
+ * JSONCodec reads and writes the JSON of IAM packets, statements and qubic transactions.
+ *
+ * write() is deterministic: the members of every object are ordered by their keys and no whitespace is
+ * added. Equal objects therefore always result in the same string, which makes it suitable for signing
+ * and for comparing messages of different writers.
+ *
+ * parse() reads strict JSON (RFC 8259) directly from any CharSequence (e.g. the StringBuilder the fragments
+ * of an IAM packet were collected in) in a single pass. Values are converted like org.json does, so the
+ * resulting objects behave the same. parseMembers() additionally keeps the raw text of each top level
+ * member, e.g. the message of an IAM packet exactly as it was signed, so it doesn't have to be serialized again.
+ * */
+public enum JSONCodec {
+    ;
+
+    private static final int MAX_DEPTH = 256;
+
+    /**
+     * @param object the object to serialize
+     * @return the canonical serialization of the object
+     * @throws JSONException if the object contains non-finite numbers
+     * */
+    public static String write(JSONObject object) {
+        StringBuilder sb = new StringBuilder();
+        writeObject(sb, object);
+        return sb.toString();
+    }
+
+    /**
+     * @param json the JSON object to parse, anything following the root object is ignored (like in org.json)
+     * @return the parsed object
+     * @throws JSONException if json is not a valid JSON object
+     * */
+    public static JSONObject parse(CharSequence json) {
+        return new Parser(json, false).parseRoot().object;
+    }
+
+    /**
+     * Like parse(), but also keeps the raw text of each top level member.
+     * @param json the JSON object to parse
+     * @return the parsed object together with the raw text of its members
+     * @throws JSONException if json is not a valid JSON object
+     * */
+    public static ParsedObject parseMembers(CharSequence json) {
+        return new Parser(json, true).parseRoot();
+    }
+
+    private static void writeValue(StringBuilder sb, Object value) {
+        if(value instanceof JSONObject)
+            writeObject(sb, (JSONObject) value);
+        else if(value instanceof JSONArray)
+            writeArray(sb, (JSONArray) value);
+        else if(value instanceof Map || value instanceof Collection || (value != null && value.getClass().isArray()))
+            writeValue(sb, JSONObject.wrap(value));
+        else
+            sb.append(JSONObject.valueToString(value));
+    }
+
+    private static void writeObject(StringBuilder sb, JSONObject object) {
+        String[] keys = object.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+        sb.append('{');
+        for(int i = 0; i < keys.length; i++) {
+            if(i > 0)
+                sb.append(',');
+            sb.append(JSONObject.quote(keys[i])).append(':');
+            writeValue(sb, object.opt(keys[i]));
+        }
+        sb.append('}');
+    }
+
+    private static void writeArray(StringBuilder sb, JSONArray array) {
+        sb.append('[');
+        for(int i = 0; i < array.length(); i++) {
+            if(i > 0)
+                sb.append(',');
+            writeValue(sb, array.opt(i));
+        }
+        sb.append(']');
+    }
+
+    /**
+     * Result of parseMembers().
+     * */
+    public static class ParsedObject {
+
+        private final JSONObject object;
+        private final CharSequence json;
+        private final Map<String, int[]> memberSpans;
+
+        private ParsedObject(JSONObject object, CharSequence json, Map<String, int[]> memberSpans) {
+            this.object = object;
+            this.json = json;
+            this.memberSpans = memberSpans;
+        }
+
+        public JSONObject getObject() {
+            return object;
+        }
+
+        /**
+         * @param key key of the top level member
+         * @return the member's value exactly as it appears in the parsed text, NULL if there is no such member
+         * */
+        public String getRawMember(String key) {
+            int[] span = memberSpans.get(key);
+            return span == null ? null : json.subSequence(span[0], span[1]).toString();
+        }
+    }
+
+    private static class Parser {
+
+        private final CharSequence json;
+        private final Map<String, int[]> memberSpans;
+        private int position = 0;
+        private int depth = 0;
+
+        Parser(CharSequence json, boolean recordMemberSpans) {
+            if(json == null)
+                throw new NullPointerException("parameter 'json' is null");
+            this.json = json;
+            memberSpans = recordMemberSpans ? new HashMap<>() : null;
+        }
+
+        ParsedObject parseRoot() {
+            skipWhitespace();
+            if(peek() != '{')
+                throw syntaxError("a JSON object must begin with '{'");
+            JSONObject object = parseObject(true);
+            return new ParsedObject(object, json, memberSpans);
+        }
+
+        private Object parseValue() {
+            skipWhitespace();
+            char c = peek();
+            switch (c) {
+                case '{': return parseObject(false);
+                case '[': return parseArray();
+                case '"': return parseString();
+                case 't': expectWord("true"); return Boolean.TRUE;
+                case 'f': expectWord("false"); return Boolean.FALSE;
+                case 'n': expectWord("null"); return JSONObject.NULL;
+                default:
+                    if(c == '-' || (c >= '0' && c <= '9'))
+                        return parseNumber();
+                    throw syntaxError("unexpected character '" + c + "'");
+            }
+        }
+
+        private JSONObject parseObject(boolean isRoot) {
+            enter();
+            position++; // '{'
+            JSONObject object = new JSONObject();
+            skipWhitespace();
+            if(peek() == '}') {
+                position++;
+                depth--;
+                return object;
+            }
+            while (true) {
+                skipWhitespace();
+                if(peek() != '"')
+                    throw syntaxError("expected a key");
+                String key = parseString();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                int valueStart = position;
+                Object value = parseValue();
+                if(object.has(key))
+                    throw syntaxError("duplicate key \"" + key + "\"");
+                object.put(key, value);
+                if(isRoot && memberSpans != null)
+                    memberSpans.put(key, new int[] {valueStart, position});
+                skipWhitespace();
+                char c = next();
+                if(c == '}')
+                    break;
+                if(c != ',')
+                    throw syntaxError("expected ',' or '}'");
+            }
+            depth--;
+            return object;
+        }
+
+        private JSONArray parseArray() {
+            enter();
+            position++; // '['
+            JSONArray array = new JSONArray();
+            skipWhitespace();
+            if(peek() == ']') {
+                position++;
+                depth--;
+                return array;
+            }
+            while (true) {
+                array.put(parseValue());
+                skipWhitespace();
+                char c = next();
+                if(c == ']')
+                    break;
+                if(c != ',')
+                    throw syntaxError("expected ',' or ']'");
+            }
+            depth--;
+            return array;
+        }
+
+        private String parseString() {
+            position++; // '"'
+            int start = position;
+            // fast path: no escape sequences
+            while (position < json.length()) {
+                char c = json.charAt(position);
+                if(c == '"') {
+                    String s = json.subSequence(start, position).toString();
+                    position++;
+                    return s;
+                }
+                if(c == '\\' || c < 0x20)
+                    break;
+                position++;
+            }
+            StringBuilder sb = new StringBuilder(position - start + 16);
+            sb.append(json, start, position);
+            while (true) {
+                char c = next();
+                if(c == '"')
+                    return sb.toString();
+                if(c < 0x20)
+                    throw syntaxError("unescaped control character in string");
+                if(c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                char escaped = next();
+                switch (escaped) {
+                    case '"': case '\\': case '/': sb.append(escaped); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'u': sb.append(parseUnicodeEscape()); break;
+                    default: throw syntaxError("illegal escape sequence '\\" + escaped + "'");
+                }
+            }
+        }
+
+        private char parseUnicodeEscape() {
+            if(position + 4 > json.length())
+                throw syntaxError("unterminated unicode escape sequence");
+            int value = 0;
+            for(int i = 0; i < 4; i++) {
+                int digit = Character.digit(json.charAt(position++), 16);
+                if(digit < 0)
+                    throw syntaxError("illegal unicode escape sequence");
+                value = (value << 4) | digit;
+            }
+            return (char) value;
+        }
+
+        private Object parseNumber() {
+            int start = position;
+            if(peek() == '-')
+                position++;
+            if(peek() == '0')
+                position++;
+            else
+                skipDigits();
+            if(position < json.length() && json.charAt(position) == '.') {
+                position++;
+                skipDigits();
+            }
+            if(position < json.length() && (json.charAt(position) == 'e' || json.charAt(position) == 'E')) {
+                position++;
+                if(peek() == '+' || peek() == '-')
+                    position++;
+                skipDigits();
+            }
+            // converts into the same Number types as org.json (Integer, Long, BigInteger, Double, ...)
+            return JSONObject.stringToValue(json.subSequence(start, position).toString());
+        }
+
+        private void skipDigits() {
+            int start = position;
+            while (position < json.length() && json.charAt(position) >= '0' && json.charAt(position) <= '9')
+                position++;
+            if(position == start)
+                throw syntaxError("expected a digit");
+        }
+
+        private void expectWord(String word) {
+            for(int i = 0; i < word.length(); i++)
+                if(next() != word.charAt(i))
+                    throw syntaxError("expected '" + word + "'");
+        }
+
+        private void expect(char expected) {
+            if(next() != expected)
+                throw syntaxError("expected '" + expected + "'");
+        }
+
+        private void enter() {
+            if(++depth > MAX_DEPTH)
+                throw syntaxError("exceeded maximum nesting depth of " + MAX_DEPTH);
+        }
+
+        private void skipWhitespace() {
+            while (position < json.length()) {
+                char c = json.charAt(position);
+                if(c != ' ' && c != '\t' && c != '\n' && c != '\r')
+                    return;
+                position++;
+            }
+        }
+
+        private char peek() {
+            if(position >= json.length())
+                throw syntaxError("unexpected end of input");
+            return json.charAt(position);
+        }
+
+        private char next() {
+            char c = peek();
+            position++;
+            return c;
+        }
+
+        private JSONException syntaxError(String message) {
+            return new JSONException(message + " at position " + position);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package tangle;
+
+import exceptions.IotaAPICallFailedException;
+import jota.model.Transaction;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author microhash
+ *
+ * Fallback TransactionFeed for backends that cannot push transactions themselves. Regularly looks up
+ * all watched addresses in a single request and publishes every transaction not seen before. Every round
+ * is a request to the node, so polling only runs while at least one address is watched.
+ * */
+public class PollingTransactionFeed extends TransactionFeed {
+
+    private final long pollIntervalMillis;
+    private final Map<String, Set<String>> seenHashesByAddress = new ConcurrentHashMap<>();
+    private ScheduledExecutorService poller;
+    private boolean closed = false;
+
+    /**
+     * @param pollIntervalMillis milliseconds between two lookups of the watched addresses
+     * */
+    public PollingTransactionFeed(long pollIntervalMillis) {
+        if(pollIntervalMillis <= 0)
+            throw new IllegalArgumentException("parameter 'pollIntervalMillis' must be positive");
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    @Override
+    public void subscribe(String address, TransactionListener listener) {
+        super.subscribe(address, listener);
+        startPollingIfNecessary();
+    }
+
+    @Override
+    public void unsubscribe(String address, TransactionListener listener) {
+        super.unsubscribe(address, listener);
+        if(!getWatchedAddresses().contains(address))
+            seenHashesByAddress.remove(address);
+        stopPollingIfUnused();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        stopPolling();
+    }
+
+    private synchronized void startPollingIfNecessary() {
+        if(poller != null || closed)
+            return;
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "qlite-feed-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::poll, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void stopPollingIfUnused() {
+        if(getWatchedAddresses().isEmpty())
+            stopPolling();
+    }
+
+    private synchronized void stopPolling() {
+        if(poller == null)
+            return;
+        poller.shutdownNow();
+        poller = null;
+    }
+
+    /**
+     * @return TRUE if the watched addresses are currently being polled
+     * */
+    synchronized boolean isPolling() {
+        return poller != null;
+    }
+
+    private void poll() {
+        String[] addresses = getWatchedAddresses().toArray(new String[0]);
+        if(addresses.length == 0)
+            return;
+
+        List<Transaction> transactions;
+        try {
+            transactions = AddressLookupCoalescer.getInstance().findTransactionsByAddresses(addresses);
+        } catch (IotaAPICallFailedException e) {
+            return; // try again next round
+        }
+
+        if(transactions != null)
+            for(Transaction transaction : transactions)
+                if(markAsSeen(transaction))
+                    publish(transaction);
+    }
+
+    private boolean markAsSeen(Transaction transaction) {
+        if(!getWatchedAddresses().contains(transaction.getAddress()))
+            return false;
+        return seenHashesByAddress.computeIfAbsent(transaction.getAddress(), a -> ConcurrentHashMap.newKeySet()).add(transaction.getHash());
+    }
+}
@@ -0,0 +1,56 @@
+package tangle;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author microhash
+ *
+ * The RetryPolicy defines how often and after which delays a failed API call is retried.
+ * Delays grow exponentially and are randomized ("full jitter") so that many clients failing
+ * at the same time do not hammer a struggling node in lockstep.
+ * */
+public class RetryPolicy {
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(4, 250, 8000);
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    /**
+     * @param maxAttempts     maximum amount of attempts (including the first one)
+     * @param baseDelayMillis upper bound of the delay before the first retry
+     * @param maxDelayMillis  upper bound of the delay before any retry
+     * */
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        if(maxAttempts < 1)
+            throw new IllegalArgumentException("parameter 'maxAttempts' must be at least 1");
+        if(baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis)
+            throw new IllegalArgumentException("delays must fulfill: 0 <= baseDelayMillis <= maxDelayMillis");
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * @param failedAttempts amount of attempts that have already failed (at least 1)
+     * @return randomized delay in milliseconds to wait before the next attempt
+     * */
+    public long determineDelay(int failedAttempts) {
+        int exponent = Math.min(failedAttempts-1, 30);
+        long upperBound = Math.min(maxDelayMillis, baseDelayMillis << exponent);
+        return upperBound > 0 ? ThreadLocalRandom.current().nextLong(upperBound + 1) : 0;
+    }
+
+    /**
+     * @param failedAttempts amount of attempts that have already failed
+     * @return TRUE if another attempt is allowed, FALSE if the call shall be given up
+     * */
+    public boolean allowsAnotherAttempt(int failedAttempts) {
+        return failedAttempts < maxAttempts;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+}
@@ -1,14 +1,8 @@
 package tangle;
 
-import cfb.pearldiver.PearlDiverLocalPoW;
 import exceptions.IotaAPICallFailedException;
-import jota.IotaAPI;
-import jota.dto.response.GetBalancesResponse;
-import jota.dto.response.SendTransferResponse;
 import jota.error.ArgumentException;
-import jota.model.Input;
 import jota.model.Transaction;
-import jota.model.Transfer;
 import jota.utils.TrytesConverter;
 
 import java.security.InvalidParameterException;
@@ -20,16 +14,19 @@ import java.util.Map;
 /**
  * @author microhash
  *
- * The TangleAPI is the interface between the QLite library and the
- * IotaAPI of the iota library. It takes care of all tangle requests.
+ * The TangleAPI is the interface between the QLite library and the tangle.
+ * It takes care of all tangle requests and forwards them to a TangleBackend,
+ * usually the IotaAPI of the iota library.
  * */
 public class TangleAPI {
 
-    private static TangleAPI instance = new TangleAPI(new NodeAddress("https://nodes.devnet.thetangle.org:443"), 9, true);
+    private static TangleAPI instance = new TangleAPI(new IotaNodeBackend(new NodeAddress("https://nodes.devnet.thetangle.org:443"), true), 9);
 
     private static final String TAG = "QLITE9999999999999999999999";
+    private static final long FEED_POLL_INTERVAL_MILLIS = 1000;
 
-    private final IotaAPI wrappedAPI;
+    private final TangleBackend backend;
+    private final TransactionFeed transactionFeed;
     private int mwm;
 
     public static TangleAPI getInstance() {
@@ -43,59 +40,71 @@ public class TangleAPI {
      * @param localPow    TRUE: perform proof-of-work locally, FALSE: perform pow on remote iota node
      * */
     public static void changeNode(NodeAddress nodeAddress, int mwm, boolean localPow) {
-        instance = new TangleAPI(nodeAddress, mwm, localPow);
+        changeBackend(new IotaNodeBackend(nodeAddress, localPow), mwm);
     }
 
-    private TangleAPI(NodeAddress nodeAddress, int mwm, boolean localPow) {
-
-        IotaAPI.Builder builder = new IotaAPI.Builder()
-                .protocol(nodeAddress.getProtocol())
-                .host(nodeAddress.getHost())
-                .port(nodeAddress.getPort());
-
-        if(localPow)
-            builder.localPoW(new PearlDiverLocalPoW());
+    /**
+     * Changes the backend all tangle requests are forwarded to. Allows to replace
+     * the iota node with a local stand-in such as InMemoryTangle.
+     * @param backend the backend to use
+     * @param mwm     min weight magnitude passed to the backend
+     * */
+    public static void changeBackend(TangleBackend backend, int mwm) {
+        TangleAPI previous = instance;
+        instance = new TangleAPI(backend, mwm);
+        // e.g. stops polling the previous node
+        if(previous.transactionFeed != instance.transactionFeed)
+            previous.transactionFeed.close();
+    }
 
-        wrappedAPI = new WrappedIotaAPI(builder, 3);
+    private TangleAPI(TangleBackend backend, int mwm) {
+        if(backend == null)
+            throw new NullPointerException("parameter 'backend' is null");
+        this.backend = backend;
         this.mwm = mwm;
+        // backends that cannot push transactions are polled instead
+        transactionFeed = backend instanceof TransactionFeed ? (TransactionFeed)backend : new PollingTransactionFeed(FEED_POLL_INTERVAL_MILLIS);
     }
 
     /**
-     * Sends a data transaction to the tangle. Keeps trying until there is no error.
+     * Sends a data transaction to the tangle. Failed attempts are retried with exponential backoff.
      * @param address the address to which the transaction shall be attached
      * @param tryteMessage the transaction message (in trytes)
      * @return transaction hash of sent transaction
+     * @throws IotaAPICallFailedException if the transaction could not be sent
      * */
     public String sendTrytes(String address, String tryteMessage) {
-
-        List<Input> inputs = new LinkedList<>();
-        List<Transfer> transfers = new LinkedList<>();
-        transfers.add(new Transfer(address, 0, tryteMessage, TAG));
-
-        while (true) {
-            try {
-                SendTransferResponse response = wrappedAPI.sendTransfer("", 1, 3, mwm, transfers, inputs, "", true, false);
-                return response.getTransactions().get(0).getHash();
-            } catch (ArgumentException e) {
-                e.printStackTrace();
-                return null;
-            } catch (NullPointerException e) {
-                StackTraceElement ste = e.getStackTrace()[0];
-                System.err.println("NullPointerException in file " + ste.getFileName() + " at line #" + ste.getLineNumber());
-            }
-
-            try { Thread.sleep(1000); } catch (InterruptedException e) { e.printStackTrace(); }
+        try {
+            return backend.attach(address, tryteMessage, TAG, mwm);
+        } catch (ArgumentException e) {
+            e.printStackTrace();
+            return null;
         }
     }
 
+    /**
+     * @see #sendTrytes(String, String)
+     * @throws IotaAPICallFailedException if the transaction could not be sent
+     * */
     public String sendTrytes(String tryteMessage) {
         return sendTrytes(TryteTool.NINE_ADDRESS, tryteMessage);
     }
 
+    /**
+     * @see #sendMessage(String, String)
+     * @throws IotaAPICallFailedException if the transaction could not be sent
+     * */
     public String sendMessage(String message) {
         return sendMessage(TryteTool.NINE_ADDRESS, message);
     }
 
+    /**
+     * Sends a data transaction with an ascii message to the tangle.
+     * @param address the address to which the transaction shall be attached
+     * @param message the ascii message
+     * @return transaction hash of sent transaction
+     * @throws IotaAPICallFailedException if the transaction could not be sent
+     * */
     public String sendMessage(String address, String message) {
         return sendTrytes(address, TrytesConverter.toTrytes(message));
     }
@@ -103,25 +112,16 @@ public class TangleAPI {
     /**
      * Finds all transactions published to a certain address.
      * @param addresses the addresses to check
-     * @return hashes of found transactions
+     * @return found transactions (empty if there are none), NULL if the addresses are invalid
+     * @throws IotaAPICallFailedException if the node could not be queried, this is NOT the same as an empty result
      * */
     public List<Transaction> findTransactionsByAddresses(String[] addresses) {
-
-        List<Transaction> transactions = null;
-
-        while (transactions == null) {
-            try {
-                return wrappedAPI.findTransactionObjectsByAddresses(addresses);
-            } catch (ArgumentException e) {
-                e.printStackTrace();
-                return null;
-            } catch (NullPointerException e) {
-                StackTraceElement ste = e.getStackTrace()[0];
-                System.err.println("NullPointerException in file " + ste.getFileName() + " at line #" + ste.getLineNumber());
-            }
+        try {
+            return backend.findTransactionsByAddresses(addresses);
+        } catch (ArgumentException e) {
+            e.printStackTrace();
+            return null;
         }
-
-        return transactions;
     }
 
     /**
@@ -130,6 +130,7 @@ public class TangleAPI {
      * @param address the address to check
      * @param convert convert the message trytes to ascii before returning?
      * @return transaction messages mapped by transaction hash of all transactions found
+     * @throws IotaAPICallFailedException if the node could not be queried (unless a preload is passed)
      * */
     public Map<String, String> readTransactionsByAddress(List<Transaction> preload, String address, boolean convert) {
         List<Transaction> transactions;
@@ -145,72 +146,94 @@ public class TangleAPI {
         Map<String, String> map = new HashMap<>();
 
         for(Transaction tx : transactions) {
-            String trytes = tx.getSignatureFragments();
-            trytes = trytes.split("99")[0];
-            if(trytes.length()%2 == 1) trytes += "9";
-            String message = convert ? TrytesConverter.toString(trytes) : trytes;
-
-            map.put(tx.getHash(), message);
+            String fragment = tx.getSignatureFragments();
+            map.put(tx.getHash(), convert ? TryteMessageScanner.decodeMessage(fragment) : TryteMessageScanner.extractTrytes(fragment));
         }
         return map;
     }
 
+    /**
+     * @param hash the hash of the requested transaction
+     * @return the decoded message of the transaction, NULL if not found
+     * @throws IotaAPICallFailedException if the node could not be queried
+     * */
     public String readTransactionMessage(String hash) {
-        String transactionTrytes = readTransactionTrytes(hash);
-        return transactionTrytes != null ? TrytesConverter.toString(transactionTrytes) : null;
+        Map<String, String> fragmentsByHash = readTransactionsFragments(new String[] {hash});
+        String fragment = fragmentsByHash != null ? fragmentsByHash.get(hash) : null;
+        return fragment != null ? TryteMessageScanner.decodeMessage(fragment) : null;
     }
 
     /**
      * Finds the transaction with a certain hash.
      * @param hash    the hash of the requested transaction
      * @return transaction messages of the transaction found, NULL if not found
+     * @throws IotaAPICallFailedException if the node could not be queried
      * */
     public String readTransactionTrytes(String hash) {
+        Map<String, String> trytesByHash = readTransactionsTrytes(new String[] {hash});
+        return trytesByHash != null ? trytesByHash.get(hash) : null;
+    }
+
+    /**
+     * Finds the transactions with certain hashes in a single request.
+     * @param hashes the hashes of the requested transactions
+     * @return transaction messages mapped by the hashes of the transactions found (hashes not found are missing)
+     * @throws IotaAPICallFailedException if the node could not be queried
+     * */
+    public Map<String, String> readTransactionsTrytes(String[] hashes) {
+        Map<String, String> fragmentsByHash = readTransactionsFragments(hashes);
+        if(fragmentsByHash == null)
+            return null;
+        Map<String, String> trytesByHash = new HashMap<>();
+        for(Map.Entry<String, String> entry : fragmentsByHash.entrySet())
+            trytesByHash.put(entry.getKey(), TryteMessageScanner.extractTrytes(entry.getValue()));
+        return trytesByHash;
+    }
+
+    /**
+     * Finds the transactions with certain hashes in a single request. Unlike readTransactionsTrytes()
+     * the signature fragments are returned as they are, to be decoded with the TryteMessageScanner.
+     * @param hashes the hashes of the requested transactions
+     * @return complete signature fragments mapped by the hashes of the transactions found (hashes not found are missing)
+     * @throws IotaAPICallFailedException if the node could not be queried
+     * */
+    public Map<String, String> readTransactionsFragments(String[] hashes) {
 
-        if(!TryteTool.isTryteSequence(hash))
-            throw new InvalidParameterException("parameter hash is not a tryte sequence");
-        if(hash.length() != 81)
-            throw new InvalidParameterException("parameter hash is required to be exactly 81 trytes long");
-
-        String[] hashes = {hash};
-        List<Transaction> transactions = null;
-
-        while (transactions == null) {
-            try {
-                transactions = wrappedAPI.findTransactionsObjectsByHashes(hashes);
-            } catch (ArgumentException e) {
-                e.printStackTrace();
-                return null;
-            } catch (NullPointerException e) {
-                StackTraceElement ste = e.getStackTrace()[0];
-                System.err.println("NullPointerException in file " + ste.getFileName() + " at line #" + ste.getLineNumber());
-            }
+        for(String hash : hashes) {
+            if(!TryteTool.isTryteSequence(hash))
+                throw new InvalidParameterException("parameter hash is not a tryte sequence");
+            if(hash.length() != 81)
+                throw new InvalidParameterException("parameter hash is required to be exactly 81 trytes long");
         }
 
-        // transaction not found
-        if(transactions.size() == 0 || transactions.get(0).getHash().equals("999999999999999999999999999999999999999999999999999999999999999999999999999999999"))
-            return null;
+        List<Transaction> transactions;
 
-        String trytes = transactions.get(0).getSignatureFragments();
-        // remove end
-        trytes = trytes.substring(0, trytes.length()-1);
-        trytes = trytes.split("99")[0];
-        if(trytes.length()%2 == 1) trytes += "9";
+        try {
+            transactions = backend.findTransactionsByHashes(hashes);
+        } catch (ArgumentException e) {
+            e.printStackTrace();
+            return null;
+        }
 
-        return trytes;
+        Map<String, String> fragmentsByHash = new HashMap<>();
+        for(Transaction transaction : transactions) {
+            // transaction not found
+            if(transaction.getHash().equals(TryteTool.NINE_ADDRESS))
+                continue;
+            fragmentsByHash.put(transaction.getHash(), transaction.getSignatureFragments());
+        }
+        return fragmentsByHash;
     }
 
     /**
      * Requests the balance of a certain iota address.
      * @param address the address to check
      * @return the balance in iotas
+     * @throws IotaAPICallFailedException if the node could not be queried
      * */
     public long getBalance(String address) {
-        LinkedList<String> addresses = new LinkedList<>();
-        addresses.add(address);
         try {
-            GetBalancesResponse balancesResponse = wrappedAPI.getBalances(1, addresses);
-            return Long.parseLong(balancesResponse.getBalances()[0]);
+            return backend.getBalance(address);
         }
         catch (ArgumentException e) {
             e.printStackTrace();
@@ -223,6 +246,17 @@ public class TangleAPI {
     }
 
     public String getNodeAddress() {
-        return wrappedAPI.getProtocol() + "://" + wrappedAPI.getHost() + ":" + wrappedAPI.getPort();
+        return backend.getNodeAddress();
+    }
+
+    public TangleBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * @return feed pushing new transactions on watched addresses of this backend
+     * */
+    public TransactionFeed getTransactionFeed() {
+        return transactionFeed;
     }
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+package tangle;
+
+import jota.error.ArgumentException;
+import jota.model.Transaction;
+
+import java.util.List;
+
+/**
+ * @author microhash
+ *
+ * A TangleBackend is the storage the TangleAPI attaches transactions to and reads them from.
+ * Usually this is a remote iota node (IotaNodeBackend). For tests and simulations it can be
+ * replaced with a local stand-in (InMemoryTangle) via TangleAPI.changeBackend().
+ * @see TangleAPI
+ * */
+public interface TangleBackend {
+
+    /**
+     * Attaches a zero-value data transaction to the tangle.
+     * @param address      the address to which the transaction shall be attached
+     * @param tryteMessage the transaction message (in trytes)
+     * @param tag          the transaction tag (27 trytes)
+     * @param mwm          min weight magnitude for the proof-of-work
+     * @return transaction hash of the attached transaction
+     * */
+    String attach(String address, String tryteMessage, String tag, int mwm) throws ArgumentException;
+
+    /**
+     * @param addresses the addresses to check
+     * @return all transactions attached to any of these addresses (empty list if none)
+     * */
+    List<Transaction> findTransactionsByAddresses(String[] addresses) throws ArgumentException;
+
+    /**
+     * @param hashes the hashes of the requested transactions
+     * @return the requested transactions in the same order, transactions not found have the hash '999...999'
+     * */
+    List<Transaction> findTransactionsByHashes(String[] hashes) throws ArgumentException;
+
+    /**
+     * @param address the address to check
+     * @return the balance in iotas
+     * */
+    long getBalance(String address) throws ArgumentException;
+
+    /**
+     * @return address of the node in the format 'protocol://host:port'
+     * */
+    String getNodeAddress();
+}
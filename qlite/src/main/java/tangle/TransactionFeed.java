@@ -0,0 +1,70 @@
+package tangle;
+
+import jota.model.Transaction;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @author microhash
+ *
+ * A TransactionFeed pushes new transactions on watched addresses to its listeners as events,
+ * modelled on the transaction feed of iota nodes. This allows to react to transactions the
+ * moment they arrive instead of polling for them at fixed points in time.
+ * @see TangleAPI#getTransactionFeed()
+ * */
+public abstract class TransactionFeed {
+
+    private final Map<String, List<TransactionListener>> listenersByAddress = new ConcurrentHashMap<>();
+
+    /**
+     * Subscribes a listener to all transactions attached to an address from now on.
+     * @param address  the address to watch
+     * @param listener the listener to notify
+     * */
+    public void subscribe(String address, TransactionListener listener) {
+        listenersByAddress.computeIfAbsent(address, a -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    /**
+     * Counterpart to subscribe().
+     * @param address  the watched address
+     * @param listener the listener to remove
+     * */
+    public void unsubscribe(String address, TransactionListener listener) {
+        listenersByAddress.computeIfPresent(address, (a, listeners) -> {
+            listeners.remove(listener);
+            return listeners.isEmpty() ? null : listeners;
+        });
+    }
+
+    /**
+     * Stops delivering transactions and releases the resources of this feed. Called by TangleAPI once it
+     * switches to another backend.
+     * */
+    public void close() { }
+
+    protected Set<String> getWatchedAddresses() {
+        return listenersByAddress.keySet();
+    }
+
+    /**
+     * Delivers a transaction to all listeners subscribed to its address.
+     * @param transaction the new transaction
+     * */
+    protected void publish(Transaction transaction) {
+        List<TransactionListener> listeners = listenersByAddress.get(transaction.getAddress());
+        if(listeners == null)
+            return;
+        for(TransactionListener listener : listeners) {
+            try {
+                listener.onTransaction(transaction);
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+    }
+}
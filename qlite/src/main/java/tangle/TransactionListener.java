@@ -0,0 +1,18 @@
+package tangle;
+
+import jota.model.Transaction;
+
+/**
+ * @author microhash
+ *
+ * Receives the transactions attached to the addresses it has been subscribed to.
+ * @see TransactionFeed
+ * */
+public interface TransactionListener {
+
+    /**
+     * Is called once for every new transaction attached to a subscribed address.
+     * @param transaction the new transaction
+     * */
+    void onTransaction(Transaction transaction);
+}
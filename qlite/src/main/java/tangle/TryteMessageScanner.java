@@ -0,0 +1,82 @@
+package tangle;
+
+import java.util.Arrays;
+
+/**
+ * @author microhash
+ *
+ * TryteMessageScanner extracts messages from the signature fragments (2187 trytes) of transactions without
+ * regular expressions and intermediate strings. A message ends before the first '99' pair or with the
+ * 2186th tryte (the last tryte of a fragment is never used by this library).
+ *
+ * Messages encoded with TrytesConverter (2 trytes per char) are decoded pair by pair straight into a char
+ * buffer. Their terminator is only searched at even offsets, so a char encoded as 'X9' followed by one
+ * encoded as '9Y' does not end the message.
+ * */
+public enum TryteMessageScanner {
+    ;
+
+    public static final int CHARS_PER_FRAGMENT = (TryteTool.TRYTES_PER_TRANSACTION_MESSAGE - 1) / TryteTool.TRYTES_PER_BYTE;
+
+    private static final int[] TRYTE_VALUES = new int[128];
+
+    static {
+        String alphabet = "9ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+        Arrays.fill(TRYTE_VALUES, -1);
+        for(int i = 0; i < alphabet.length(); i++)
+            TRYTE_VALUES[alphabet.charAt(i)] = i;
+    }
+
+    /**
+     * Extracts plain tryte messages (e.g. public keys or binary IAM packets). Odd lengths are padded with a '9'.
+     * @param fragment the signature fragment of a transaction
+     * @return the trytes before the first '99' at any offset
+     * */
+    public static String extractTrytes(String fragment) {
+        int end = Math.min(fragment.length(), TryteTool.TRYTES_PER_TRANSACTION_MESSAGE - 1);
+        for(int i = 0; i+1 < end; i++) {
+            if(fragment.charAt(i) == '9' && fragment.charAt(i+1) == '9') {
+                end = i;
+                break;
+            }
+        }
+        return end % 2 == 0 ? fragment.substring(0, end) : fragment.substring(0, end) + "9";
+    }
+
+    /**
+     * Decodes a message encoded with TrytesConverter.
+     * @param fragment the signature fragment of a transaction
+     * @return the decoded message
+     * */
+    public static String decodeMessage(CharSequence fragment) {
+        char[] message = new char[CHARS_PER_FRAGMENT];
+        return new String(message, 0, decodeMessage(fragment, message, 0));
+    }
+
+    /**
+     * Decodes a message encoded with TrytesConverter into an existing buffer.
+     * @param fragment          the signature fragment of a transaction
+     * @param destination       buffer to decode into, requires room for CHARS_PER_FRAGMENT chars
+     * @param destinationOffset index of the first char written
+     * @return amount of chars written
+     * @throws IllegalArgumentException if the fragment contains something else than trytes
+     * */
+    public static int decodeMessage(CharSequence fragment, char[] destination, int destinationOffset) {
+        int pairs = Math.min(fragment.length(), TryteTool.TRYTES_PER_TRANSACTION_MESSAGE - 1) / 2;
+        int written = 0;
+        for(; written < pairs; written++) {
+            int first = tryteValue(fragment.charAt(2*written)), second = tryteValue(fragment.charAt(2*written+1));
+            if(first == 0 && second == 0)
+                break;
+            destination[destinationOffset + written] = (char)(first + second * 27);
+        }
+        return written;
+    }
+
+    private static int tryteValue(char tryte) {
+        int value = tryte < TRYTE_VALUES.length ? TRYTE_VALUES[tryte] : -1;
+        if(value < 0)
+            throw new IllegalArgumentException("unexpected tryte '" + tryte + "'");
+        return value;
+    }
+}
@@ -3,6 +3,8 @@ package tangle;
 import iam.IAMStream;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.concurrent.ThreadLocalRandom;
+
 /**
  * @author microhash
  *
@@ -17,18 +19,36 @@ public enum  TryteTool {
     public static final int TRYTES_PER_BYTE = 2;
     public static final int TRYTES_PER_TRANSACTION_MESSAGE = 2187;
 
+    private static final int BITS_PER_DENSE_TRIPLET = 14;
+    private static final int TRYTES_PER_LONG = 14; // 26^14 > 2^63
     private static final char[] chars = "9ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
 
+    // lookup tables: the two trytes encoding each (unsigned) byte in bytesToTrytes(), trytes among the ASCII chars
+    private static final char[] HIGH_TRYTE_OF_BYTE = new char[256];
+    private static final char[] LOW_TRYTE_OF_BYTE = new char[256];
+    private static final boolean[] IS_TRYTE = new boolean[128];
+
+    static {
+        for(int b = 0; b < 256; b++) {
+            // +1 to exclude reserved sequence '99' (indicating undefined)
+            HIGH_TRYTE_OF_BYTE[b] = chars[b/26+1];
+            LOW_TRYTE_OF_BYTE[b] = chars[b%26+1];
+        }
+        for(char tryte : chars)
+            IS_TRYTE[tryte] = true;
+    }
+
     /**
      * Generates a random tryte sequence.
      * @param length sequence length
      * @return tryte sequence
      * */
     public static String generateRandom(int length) {
-        String trytes = "";
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] trytes = new char[length];
         for(int i = 0; i < length; i++)
-            trytes += chars[(int)(Math.random()*chars.length)];
-        return trytes;
+            trytes[i] = chars[random.nextInt(chars.length)];
+        return new String(trytes);
     }
 
     /**
@@ -50,10 +70,11 @@ public enum  TryteTool {
      * */
     public static String positiveLongToTrytes(long n) {
         assert n >= 0;
-        String trytes = "";
-        for(; n > 0; n /= 26)
-            trytes = chars[(int)(n%26)] + trytes;
-        return StringUtils.leftPad(trytes, 14, '9');
+        char[] trytes = new char[TRYTES_PER_LONG];
+        // filled from the end, the remaining leading digits are padding ('9' also represents the digit 0)
+        for(int i = TRYTES_PER_LONG-1; i >= 0; i--, n /= 26)
+            trytes[i] = chars[(int)(n%26)];
+        return new String(trytes);
     }
 
     /**
@@ -63,14 +84,26 @@ public enum  TryteTool {
      * */
     public static String bytesToTrytes(byte[] bytes) {
         char[] trytes = new char[bytes.length*2];
+        bytesToTrytes(bytes, 0, bytes.length, trytes, 0);
+        return new String(trytes);
+    }
 
-        for(int i = 0; i < bytes.length; i++) {
-            int b = bytes[i]+128; // +1 to exclude reserved sequence '99' (indicating undefined)
-            trytes[2*i] = chars[b/26+1];
-            trytes[2*i+1] = chars[b%26+1];
+    /**
+     * Encodes a section of a byte array into an existing buffer, see bytesToTrytes(byte[]).
+     * @param bytes             the byte array to convert
+     * @param offset            index of the first byte to convert
+     * @param length            amount of bytes to convert
+     * @param destination       buffer to write the trytes into, requires room for 2*length trytes
+     * @param destinationOffset index of the first tryte written
+     * @return index in destination behind the last tryte written
+     * */
+    public static int bytesToTrytes(byte[] bytes, int offset, int length, char[] destination, int destinationOffset) {
+        for(int i = offset; i < offset+length; i++) {
+            int b = bytes[i]+128;
+            destination[destinationOffset++] = HIGH_TRYTE_OF_BYTE[b];
+            destination[destinationOffset++] = LOW_TRYTE_OF_BYTE[b];
         }
-
-        return new String(trytes);
+        return destinationOffset;
     }
 
     /**
@@ -83,29 +116,114 @@ public enum  TryteTool {
         if(tryteString == null)
             return null;
 
-        tryteString = tryteString.split("9")[0];
-        char[] trytes = tryteString.toCharArray();
+        byte[] bytes = new byte[lengthUntilFirstNine(tryteString)/2];
+        trytesToBytes(tryteString, bytes, 0);
+        return bytes;
+    }
+
+    /**
+     * Decodes a tryte sequence into an existing buffer, see trytesToBytes(String). Decoding stops at the first '9'.
+     * @param trytes            the tryte sequence to convert
+     * @param destination       buffer to write the bytes into, requires room for all decoded bytes
+     * @param destinationOffset index of the first byte written
+     * @return amount of bytes written
+     * */
+    public static int trytesToBytes(CharSequence trytes, byte[] destination, int destinationOffset) {
+        int byteCount = lengthUntilFirstNine(trytes)/2;
+        for(int j = 0; j < byteCount; j++)
+            destination[destinationOffset+j] = (byte)(tryteToInt(trytes.charAt(2*j))*26 + tryteToInt(trytes.charAt(2*j+1))-128); // -1 to undo +1 in bytesToTrytes()
+        return byteCount;
+    }
+
+    private static int lengthUntilFirstNine(CharSequence trytes) {
+        for(int i = 0; i < trytes.length(); i++)
+            if(trytes.charAt(i) == '9')
+                return i;
+        return trytes.length();
+    }
+
+    /**
+     * Encodes a byte array densely: every 14 bits are packed into 3 trytes (26^3 >= 2^14). The sequence only
+     * consists of the letters A-Z, so it never contains the reserved tryte '9'. Counterpart to denseTrytesToBytes().
+     * @param bytes the byte array to convert
+     * @return the resulting tryte sequence, its length is a multiple of 3
+     * */
+    public static String bytesToDenseTrytes(byte[] bytes) {
+        int triplets = (bytes.length * 8 + BITS_PER_DENSE_TRIPLET - 1) / BITS_PER_DENSE_TRIPLET;
+        char[] trytes = new char[triplets * 3];
+
+        int buffer = 0, bufferedBits = 0, byteIndex = 0;
+        for(int i = 0; i < triplets; i++) {
+            while (bufferedBits < BITS_PER_DENSE_TRIPLET) {
+                buffer = (buffer << 8) | (byteIndex < bytes.length ? bytes[byteIndex++] & 0xFF : 0);
+                bufferedBits += 8;
+            }
+            bufferedBits -= BITS_PER_DENSE_TRIPLET;
+            int value = buffer >>> bufferedBits;
+            buffer &= (1 << bufferedBits) - 1;
+
+            trytes[3*i] = chars[value / (26*26) + 1];
+            trytes[3*i+1] = chars[value / 26 % 26 + 1];
+            trytes[3*i+2] = chars[value % 26 + 1];
+        }
 
-        byte[] bytes = new byte[trytes.length/2];
+        return new String(trytes);
+    }
 
-        for(int j = 0; j < bytes.length; j++) {
-            bytes[j] = (byte)(tryteToInt(trytes[2*j])*26 + tryteToInt(trytes[2*j+1])-128); // -1 to undo +1 in bytesToTrytes()
+    /**
+     * Decodes a dense tryte sequence back into a byte array. Counterpart to bytesToDenseTrytes().
+     * @param trytes    the tryte sequence to convert
+     * @param byteCount the amount of bytes encoded (the encoding pads the last triplet)
+     * @return the decoded byte array
+     * @throws IllegalArgumentException if the sequence is too short or not a dense tryte sequence
+     * */
+    public static byte[] denseTrytesToBytes(CharSequence trytes, int byteCount) {
+        byte[] bytes = new byte[byteCount];
+
+        int buffer = 0, bufferedBits = 0, byteIndex = 0;
+        for(int i = 0; byteIndex < byteCount && 3*i+2 < trytes.length(); i++) {
+            int value = letterToInt(trytes.charAt(3*i)) * 26 * 26 + letterToInt(trytes.charAt(3*i+1)) * 26 + letterToInt(trytes.charAt(3*i+2));
+            if(value >= 1 << BITS_PER_DENSE_TRIPLET)
+                throw new IllegalArgumentException("not a dense tryte sequence");
+            buffer = (buffer << BITS_PER_DENSE_TRIPLET) | value;
+            bufferedBits += BITS_PER_DENSE_TRIPLET;
+            for(; bufferedBits >= 8 && byteIndex < byteCount; bufferedBits -= 8) {
+                bytes[byteIndex++] = (byte)(buffer >>> (bufferedBits - 8));
+                buffer &= (1 << (bufferedBits - 8)) - 1;
+            }
         }
 
+        if(byteIndex < byteCount)
+            throw new IllegalArgumentException("tryte sequence too short for " + byteCount + " bytes");
         return bytes;
     }
 
+    /**
+     * @param byteCount amount of bytes to encode
+     * @return length of the tryte sequence returned by bytesToDenseTrytes()
+     * */
+    public static int lengthOfDenseTrytes(int byteCount) {
+        return 3 * ((byteCount * 8 + BITS_PER_DENSE_TRIPLET - 1) / BITS_PER_DENSE_TRIPLET);
+    }
+
     public static boolean isAsciiString(String s) {
-        for (char c : s.toCharArray()) {
-            if (((int)c) > 127) {
+        for(int i = 0; i < s.length(); i++)
+            if(s.charAt(i) > 127)
                 return false;
-            }
-        }
         return true;
     }
 
+    /**
+     * @param string the string to check
+     * @return TRUE if the string only consists of the trytes 'A'-'Z' and '9' (also for the empty string)
+     * */
     public static boolean isTryteSequence(String string) {
-        return string.matches("^[A-Z9]*$");
+        for(int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if(c >= IS_TRYTE.length || !IS_TRYTE[c])
+                return false;
+        }
+        return true;
     }
 
     /**
@@ -116,4 +234,10 @@ public enum  TryteTool {
     private static int tryteToInt(char c) {
         return c-'A';
     }
+
+    private static int letterToInt(char c) {
+        if(c < 'A' || c > 'Z')
+            throw new IllegalArgumentException("not a dense tryte sequence, unexpected '"+c+"'");
+        return c-'A';
+    }
 }
\ No newline at end of file
@@ -2,81 +2,102 @@ package tangle;
 
 import exceptions.IotaAPICallFailedException;
 import jota.IotaAPI;
+import jota.dto.response.GetBalancesResponse;
 import jota.dto.response.SendTransferResponse;
 import jota.error.ArgumentException;
 import jota.model.Input;
 import jota.model.Transaction;
 import jota.model.Transfer;
 
-import java.util.LinkedList;
 import java.util.List;
 
+/**
+ * @author microhash
+ *
+ * Retries failed calls of the IotaAPI with jittered exponential backoff and stops calling the node
+ * altogether while its circuit breaker is open. A call that still fails is never disguised as an
+ * empty result but ends in an IotaAPICallFailedException.
+ * */
 public class WrappedIotaAPI extends IotaAPI {
 
-    private final int throwableTolerance;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker circuitBreaker;
 
-    WrappedIotaAPI(IotaAPI.Builder builder, int throwableTolerance) {
+    WrappedIotaAPI(IotaAPI.Builder builder, RetryPolicy retryPolicy, CircuitBreaker circuitBreaker) {
         super(builder);
-        this.throwableTolerance = throwableTolerance;
+        this.retryPolicy = retryPolicy;
+        this.circuitBreaker = circuitBreaker;
     }
 
     @Override
-    public List<Transaction> findTransactionsObjectsByHashes(String[] hashes) {
-        List<Transaction> transactionObjects = null;
-        for(int i = 0; i < throwableTolerance && transactionObjects == null; i++)
-            transactionObjects = tryToFindTransactionsObjectsByHashes(hashes, i == throwableTolerance-1);
-        return transactionObjects;
-    }
-
-    private List<Transaction> tryToFindTransactionsObjectsByHashes(String[] hashes, boolean isLastTry) {
-        try {
-            return super.findTransactionsObjectsByHashes(hashes);
-        } catch (Throwable t) {
-            if(isLastTry)
-                logThrowable(t);
-            return new LinkedList<>();
-        }
+    public List<Transaction> findTransactionsObjectsByHashes(String[] hashes) throws ArgumentException {
+        return callWithRetries(() -> super.findTransactionsObjectsByHashes(hashes));
     }
 
     @Override
-    public List<Transaction> findTransactionObjectsByAddresses(String[] addresses) {
-        List<Transaction> transactionObjects = null;
-        for(int i = 0; i < throwableTolerance && transactionObjects == null; i++)
-            transactionObjects = tryToFindTransactionsObjectsByAddresses(addresses,i == throwableTolerance-1);
-        return transactionObjects;
+    public List<Transaction> findTransactionObjectsByAddresses(String[] addresses) throws ArgumentException {
+        return callWithRetries(() -> super.findTransactionObjectsByAddresses(addresses));
     }
 
-    private List<Transaction> tryToFindTransactionsObjectsByAddresses(String[] addresses, boolean isLastTry) {
-        try {
-            return super.findTransactionObjectsByAddresses(addresses);
-        } catch (Throwable t) {
-            if(isLastTry)
-                logThrowable(t);
-            return new LinkedList<>();
-        }
+    @Override
+    public GetBalancesResponse getBalances(Integer threshold, List<String> addresses) throws ArgumentException {
+        return callWithRetries(() -> super.getBalances(threshold, addresses));
     }
 
     @Override
     public SendTransferResponse sendTransfer(String seed, int security, int depth, int minWeightMagnitude, List<Transfer> transfers, List<Input> inputs, String remainderAddress, boolean validateInputs, boolean validateInputAddresses) throws ArgumentException {
-        SendTransferResponse sendTransferResponse = null;
-        for(int i = 0; i < throwableTolerance && sendTransferResponse == null; i++)
-            sendTransferResponse = tryToSendTransfer(seed, security, depth, minWeightMagnitude, transfers, inputs, remainderAddress, validateInputs, validateInputAddresses, i == throwableTolerance-1);
-        return sendTransferResponse;
+        return callWithRetries(() -> super.sendTransfer(seed, security, depth, minWeightMagnitude, transfers, inputs, remainderAddress, validateInputs, validateInputAddresses));
     }
 
-    private SendTransferResponse tryToSendTransfer(String seed, int security, int depth, int minWeightMagnitude, List<Transfer> transfers, List<Input> inputs, String remainderAddress, boolean validateInputs, boolean validateInputAddresses, boolean isLastTry) {
-        try {
-            return super.sendTransfer(seed, security, depth, minWeightMagnitude, transfers, inputs, remainderAddress, validateInputs, validateInputAddresses);
-        } catch (Throwable t) {
-            if(isLastTry) {
-                logThrowable(t);
-                throw new IotaAPICallFailedException(t);
+    /**
+     * Performs an API call until it succeeds or the retry policy gives up.
+     * @param call the API call to perform
+     * @return the result of the first successful attempt
+     * @throws ArgumentException           if the arguments are invalid (not retried, the node is not to blame)
+     * @throws IotaAPICallFailedException if all attempts failed or the circuit breaker is open
+     * */
+    private <T> T callWithRetries(APICall<T> call) throws ArgumentException {
+        Throwable lastThrowable = null;
+        for(int failedAttempts = 0; retryPolicy.allowsAnotherAttempt(failedAttempts); failedAttempts++) {
+
+            if(failedAttempts > 0)
+                waitBeforeRetry(failedAttempts, lastThrowable);
+
+            if(!circuitBreaker.allowRequest())
+                throw new IotaAPICallFailedException("circuit breaker is open for node '" + circuitBreaker.getEndpoint() + "'", lastThrowable);
+
+            try {
+                T result = call.perform();
+                circuitBreaker.recordSuccess();
+                return result;
+            } catch (ArgumentException e) {
+                circuitBreaker.recordSuccess();
+                throw e;
+            } catch (Throwable t) {
+                circuitBreaker.recordFailure();
+                lastThrowable = t;
             }
-            return null;
+        }
+
+        logThrowable(lastThrowable);
+        throw new IotaAPICallFailedException(lastThrowable);
+    }
+
+    private void waitBeforeRetry(int failedAttempts, Throwable lastThrowable) {
+        try {
+            Thread.sleep(retryPolicy.determineDelay(failedAttempts));
+        } catch (InterruptedException e) {
+            // request has been cancelled (e.g. by AsyncTangleAPI)
+            Thread.currentThread().interrupt();
+            throw new IotaAPICallFailedException("interrupted while waiting for retry", lastThrowable);
         }
     }
 
     private void logThrowable(Throwable t) {
         t.printStackTrace();
     }
+
+    private interface APICall<T> {
+        T perform() throws ArgumentException;
+    }
 }
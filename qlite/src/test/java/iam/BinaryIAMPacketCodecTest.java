@@ -0,0 +1,75 @@
+package iam;
+
+import jota.utils.TrytesConverter;
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONObject;
+import org.junit.Test;
+import tangle.JSONCodec;
+import tangle.TryteTool;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BinaryIAMPacketCodecTest {
+
+    @Test
+    public void testPayloadEncodeDecode() {
+        JSONObject message = new JSONObject().put("epoch", 7).put("result", StringUtils.repeat("qubic", 200));
+        byte[] signature = new byte[46];
+        new Random().nextBytes(signature);
+
+        byte[] payload = BinaryIAMPacketCodec.encodePayload(JSONCodec.write(message), signature);
+        assertTrue("repetitive message should be deflated", payload.length < message.toString().length());
+
+        IAMPacket iamPacket = BinaryIAMPacketCodec.decodePayload(payload);
+        assertEquals(message.toString(), iamPacket.getMessage().toString());
+        assertEquals(JSONCodec.write(message), iamPacket.getMessageString());
+        assertEquals(TryteTool.bytesToTrytes(signature), iamPacket.getSignature());
+    }
+
+    @Test
+    public void testFewerFragmentsThanJSON() {
+        byte[] random = new byte[1500];
+        new Random(42).nextBytes(random);
+        JSONObject message = new JSONObject().put("result", TryteTool.bytesToTrytes(random));
+        byte[] signature = new byte[46];
+
+        String[] fragments = BinaryIAMPacketCodec.encodeInFragments(JSONCodec.write(message), signature);
+        JSONObject jsonPacket = new JSONObject().put("content", message).put("signature", TryteTool.bytesToTrytes(signature));
+        int jsonFragments = (int)Math.ceil(jsonPacket.toString().length() / (double)(TryteTool.TRYTES_PER_TRANSACTION_MESSAGE / TryteTool.TRYTES_PER_BYTE));
+        assertTrue(fragments.length < jsonFragments);
+    }
+
+    @Test
+    public void testRootFragment() {
+        JSONObject message = new JSONObject().put("result", TryteTool.generateRandom(5000));
+        String[] fragments = BinaryIAMPacketCodec.encodeInFragments(JSONCodec.write(message), new byte[46]);
+        assertTrue(fragments.length > 1);
+
+        StringBuilder hashBlock = new StringBuilder();
+        for(int i = 1; i < fragments.length; i++)
+            hashBlock.append(StringUtils.leftPad(String.valueOf((char)('A' + i)), TryteTool.TRYTES_PER_HASH, 'H'));
+        String root = BinaryIAMPacketCodec.buildRootFragment(fragments[0], hashBlock.toString());
+        assertTrue(BinaryIAMPacketCodec.isBinaryRoot(root));
+        assertTrue(root.length() < TryteTool.TRYTES_PER_TRANSACTION_MESSAGE);
+
+        IAMPacket iamPacket = BinaryIAMPacketCodec.decode(null, StringUtils.rightPad(root, TryteTool.TRYTES_PER_TRANSACTION_MESSAGE, '9'),
+                hash -> fragments[hash.charAt(TryteTool.TRYTES_PER_HASH-1) - 'A']);
+        assertEquals(message.toString(), iamPacket.getMessage().toString());
+    }
+
+    @Test
+    public void testJSONRootStartingWithQ() {
+        // the hash block of a JSON root starting with 'Q' is tryte encoded to "9C..."
+        String hashBlock = StringUtils.rightPad("Q", TryteTool.TRYTES_PER_HASH, 'H');
+        String root = TrytesConverter.toTrytes(hashBlock + new JSONObject().put("content", "legacy"));
+        assertTrue(root.startsWith("9C"));
+        assertFalse(BinaryIAMPacketCodec.isBinaryRoot(root));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedPayload() {
+        BinaryIAMPacketCodec.decodePayload(new byte[] {1, 0, 0, 12, 34});
+    }
+}
@@ -0,0 +1,105 @@
+package iam;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import tangle.InMemoryTangle;
+import tangle.TangleAPI;
+
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class IAMWriteQueueTest {
+
+    private TangleAPI previousTangleAPI;
+    private IAMWriter iamWriter;
+
+    @Before
+    public void switchToInMemoryTangle() {
+        previousTangleAPI = TangleAPI.getInstance();
+        TangleAPI.changeBackend(new InMemoryTangle(0, 0, 100), previousTangleAPI.getMWM());
+        iamWriter = new IAMWriter();
+    }
+
+    @After
+    public void restorePreviousBackend() {
+        TangleAPI.changeBackend(previousTangleAPI.getBackend(), previousTangleAPI.getMWM());
+    }
+
+    @Test
+    public void testWriteBehind() {
+        IAMWriteQueue writeQueue = new IAMWriteQueue(8);
+        iamWriter.setWriteQueue(writeQueue);
+        IAMReader iamReader = new IAMReader(iamWriter.getID());
+
+        CompletableFuture<String> first = iamWriter.writeAsync(new IAMIndex(0), new JSONObject().put("n", 0), IAMWriteQueue.Priority.CRITICAL, farDeadline());
+        CompletableFuture<String> second = iamWriter.writeAsync(new IAMIndex(1), new JSONObject().put("n", 1), IAMWriteQueue.Priority.CRITICAL, farDeadline());
+        assertNotNull(first.join());
+        assertNotNull(second.join());
+
+        assertEquals(1, iamReader.read(new IAMIndex(1)).getInt("n"));
+        assertEquals(2, writeQueue.getCompletedCount());
+        assertEquals(0, writeQueue.getPendingCount());
+    }
+
+    @Test
+    public void testShedNonCriticalFirst() {
+        // no write is performed before all of them have been submitted
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch submitted = new CountDownLatch(1);
+        executor.execute(() -> awaitUninterruptibly(submitted));
+        IAMWriteQueue writeQueue = new IAMWriteQueue(4, executor);
+        iamWriter.setWriteQueue(writeQueue);
+
+        CompletableFuture<String> critical = submit(0, IAMWriteQueue.Priority.CRITICAL);
+        CompletableFuture<String> nonCritical = submit(1, IAMWriteQueue.Priority.NON_CRITICAL);
+        CompletableFuture<String> rejected = submit(2, IAMWriteQueue.Priority.NON_CRITICAL); // more than half full
+        submit(3, IAMWriteQueue.Priority.CRITICAL);
+        submit(4, IAMWriteQueue.Priority.CRITICAL);
+        CompletableFuture<String> displacing = submit(5, IAMWriteQueue.Priority.CRITICAL); // full, sheds the non-critical write
+        submitted.countDown();
+
+        assertFailsWith(RejectedExecutionException.class, rejected);
+        assertFailsWith(RejectedExecutionException.class, nonCritical);
+        assertNotNull(critical.join());
+        assertNotNull(displacing.join());
+        assertEquals(2, writeQueue.getShedCount());
+        assertEquals(4, writeQueue.getCompletedCount());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testDeadline() {
+        iamWriter.setWriteQueue(new IAMWriteQueue(4));
+        CompletableFuture<String> expired = iamWriter.writeAsync(new IAMIndex(0), new JSONObject(), IAMWriteQueue.Priority.CRITICAL, System.currentTimeMillis() - 1);
+        assertFailsWith(TimeoutException.class, expired);
+        assertEquals(1, iamWriter.getWriteQueue().getExpiredCount());
+    }
+
+    private CompletableFuture<String> submit(int position, IAMWriteQueue.Priority priority) {
+        return iamWriter.writeAsync(new IAMIndex(position), new JSONObject().put("n", position), priority, farDeadline());
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long farDeadline() {
+        return System.currentTimeMillis() + 60000;
+    }
+
+    private static void assertFailsWith(Class<? extends Throwable> expected, CompletableFuture<String> future) {
+        try {
+            future.join();
+            fail("write should have failed");
+        } catch (CompletionException e) {
+            assertTrue(expected.isInstance(e.getCause()));
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package iam.signing;
 
+import org.junit.Assume;
 import org.junit.Test;
+import tangle.TryteTool;
 
-import java.security.NoSuchAlgorithmException;
+import java.security.*;
 import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
 
 import static org.junit.Assert.*;
 
@@ -14,4 +17,41 @@ public class SignerTest {
         Signer signer = new Signer();
         signer.loadKeysFromTrytes("A", "B");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testLegacyCompatibility() throws GeneralSecurityException {
+        Signer signer = new Signer();
+        String message = "{\"epoch\":3,\"result\":\"ABC\"}";
+        byte[] signatureBytes = TryteTool.trytesToBytes(signer.sign(message));
+
+        // verify the way previous versions did
+        Signature legacyVerifier = Signature.getInstance("SHA1withDSA");
+        PublicKey publicKey = KeyFactory.getInstance("DSA").generatePublic(new X509EncodedKeySpec(TryteTool.trytesToBytes(signer.getPublicKeyTrytes())));
+        legacyVerifier.initVerify(publicKey);
+        byte[] buffer = new byte[1024];
+        for(byte b : message.getBytes())
+            legacyVerifier.update(buffer, 0, b);
+        assertTrue(legacyVerifier.verify(signatureBytes));
+    }
+
+    @Test
+    public void testEd25519() throws NoSuchAlgorithmException {
+        Assume.assumeTrue(SignatureScheme.ED25519.isAvailable());
+        Signer signer = new Signer(SignatureScheme.ED25519);
+        PublicKey publicKey = SignatureValidator.parsePublicKey(SignatureScheme.ED25519, signer.getPublicKeyTrytes());
+        String signature = signer.sign("message");
+        assertTrue(SignatureValidator.validate(SignatureScheme.ED25519, publicKey, signature, "message"));
+        assertFalse(SignatureValidator.validate(SignatureScheme.ED25519, publicKey, signature, "massage"));
+    }
+
+    @Test
+    public void testRootTrytes() throws NoSuchAlgorithmException {
+        String publicKeyTrytes = new Signer().getPublicKeyTrytes();
+        for(SignatureScheme scheme : SignatureScheme.values()) {
+            String rootTrytes = scheme.buildRootTrytes(publicKeyTrytes);
+            assertEquals(scheme, SignatureScheme.fromRootTrytes(rootTrytes));
+            assertEquals(publicKeyTrytes, SignatureScheme.extractPublicKeyTrytes(rootTrytes));
+        }
+        assertEquals(publicKeyTrytes, SignatureScheme.DSA_SHA1.buildRootTrytes(publicKeyTrytes));
+    }
+}
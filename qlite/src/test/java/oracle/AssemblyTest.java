@@ -0,0 +1,186 @@
+package oracle;
+
+import iam.IAMIndex;
+import iam.IAMWriter;
+import oracle.statements.hash.HashStatement;
+import oracle.statements.hash.HashStatementIAMIndex;
+import oracle.statements.hash.HastStatementWriter;
+import oracle.statements.result.ResultStatement;
+import oracle.statements.result.ResultStatementIAMIndex;
+import oracle.statements.result.ResultStatementWriter;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import tangle.InMemoryTangle;
+import tangle.TangleAPI;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class AssemblyTest {
+
+    private TangleAPI previousTangleAPI;
+
+    @Before
+    public void switchToInMemoryTangle() {
+        previousTangleAPI = TangleAPI.getInstance();
+        TangleAPI.changeBackend(new InMemoryTangle(), previousTangleAPI.getMWM());
+    }
+
+    @After
+    public void restorePreviousBackend() {
+        TangleAPI.changeBackend(previousTangleAPI.getBackend(), previousTangleAPI.getMWM());
+    }
+
+    @Test
+    public void testSelectionIsReproducible() {
+        List<String> ids = createOracleIDs(20);
+        Assembly assembly = createAssembly(ids), otherVerifier = createAssembly(ids);
+
+        List<OracleReader> selection = assembly.selectOracleReaders(7, 5);
+        assertEquals(5, selection.size());
+        assertEquals(5, new HashSet<>(selection).size());
+        assertEquals(selection, assembly.selectOracleReaders(7, 5));
+        assertEquals(getIDs(selection), getIDs(otherVerifier.selectOracleReaders(7, 5)));
+
+        // selection keeps the order of the assembly
+        List<OracleReader> sorted = new ArrayList<>(selection);
+        List<OracleReader> all = assembly.selectOracleReaders(0, assembly.size());
+        sorted.sort(Comparator.comparingInt(all::indexOf));
+        assertEquals(sorted, selection);
+
+        IAMIndex index = new IAMIndex("KEYWORD", 3);
+        assertEquals(getIDs(assembly.selectOracleReaders(index, 5)), getIDs(otherVerifier.selectOracleReaders(index, 5)));
+    }
+
+    @Test
+    public void testSelectionDependsOnEpoch() {
+        Assembly assembly = createAssembly(createOracleIDs(20));
+        Set<Set<OracleReader>> selections = new HashSet<>();
+        for(int epoch = 0; epoch < 10; epoch++)
+            selections.add(new HashSet<>(assembly.selectOracleReaders(epoch, 5)));
+        // 15504 possible selections, 10 identical ones are practically impossible
+        assertTrue(selections.size() > 1);
+    }
+
+    @Test
+    public void testSelectionSize() {
+        Assembly assembly = createAssembly(createOracleIDs(4));
+        assertEquals(0, assembly.selectOracleReaders(1, 0).size());
+        assertEquals(assembly.selectOracleReaders(2, 4), assembly.selectOracleReaders(1, 10));
+    }
+
+    @Test
+    public void testSelectionIgnoresRatings() {
+        List<IAMWriter> writers = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        for(int i = 0; i < 10; i++) {
+            writers.add(new IAMWriter());
+            ids.add(writers.get(i).getID());
+        }
+        Assembly rated = createAssembly(ids), fresh = createAssembly(ids);
+
+        // the first five oracles publish a result differing from the quorum
+        for(int i = 0; i < writers.size(); i++) {
+            ResultStatement resultStatement = new ResultStatement(0, i < 5 ? "WRONG" : "RIGHT");
+            new HastStatementWriter(writers.get(i)).write(new HashStatement(0, ResultHasher.hash(resultStatement), new int[writers.size()]));
+            new ResultStatementWriter(writers.get(i)).write(resultStatement);
+        }
+        rated.fetchStatements(new HashStatementIAMIndex(0));
+        rated.fetchStatements(new ResultStatementIAMIndex(0));
+        rated.rate(0, "RIGHT");
+        assertEquals(-1, rated.getRatings()[0]);
+
+        for(int epoch = 0; epoch < 10; epoch++)
+            assertEquals(getIDs(fresh.selectOracleReaders(epoch, 4)), getIDs(rated.selectOracleReaders(epoch, 4)));
+        IAMIndex index = new IAMIndex("KEYWORD", 3);
+        assertEquals(getIDs(fresh.selectOracleReaders(index, 4)), getIDs(rated.selectOracleReaders(index, 4)));
+    }
+
+    @Test
+    public void testRandomSelectionWithoutDuplicates() {
+        Assembly assembly = createAssembly(createOracleIDs(5));
+        for(int round = 0; round < 20; round++) {
+            List<OracleReader> selection = assembly.selectRandomOracleReaders(3);
+            assertEquals(3, selection.size());
+            assertEquals(3, new HashSet<>(selection).size());
+        }
+        assertEquals(5, assembly.selectRandomOracleReaders(10).size());
+    }
+
+    @Test
+    public void testIAMConsensusCountsAllVotes() {
+        IAMWriter[] writers = { new IAMWriter(), new IAMWriter(), new IAMWriter() };
+        IAMIndex index = new IAMIndex("KEYWORD", 0);
+        for(IAMWriter writer : writers)
+            writer.write(index, new JSONObject().put("vote", "YES"));
+        Assembly assembly = createAssembly(Arrays.asList(writers[0].getID(), writers[1].getID(), writers[2].getID()));
+
+        // decided after two votes already, but the third one is still part of the quorum
+        QuorumBasedResult result = assembly.getConsensusBuilder().buildIAMConsensus(index);
+        assertEquals("{\"vote\":\"YES\"}", result.getResult());
+        assertEquals(3, result.getQuorum(), 0);
+        assertEquals(3, result.getQuorumMax(), 0);
+    }
+
+    @Test
+    public void testConflictingStatementsFromFeedAreNotCounted() {
+        IAMWriter[] writers = { new IAMWriter(), new IAMWriter() };
+        Assembly assembly = createAssembly(Arrays.asList(writers[0].getID(), writers[1].getID()));
+        OracleReader equivocating = assembly.selectOracleReaders(0, 2).get(0);
+        HashStatementIAMIndex index = new HashStatementIAMIndex(0);
+
+        CompletableFuture<Void> allReceived = assembly.watchStatements(index, System.currentTimeMillis() + 60000);
+        new HastStatementWriter(writers[0]).write(new HashStatement(0, "FIRST", new int[2]));
+        new HastStatementWriter(writers[0]).write(new HashStatement(0, "SECOND", new int[2]));
+
+        // arriving packets are only recorded, not read into the cache
+        assertFalse(equivocating.hasStatement(index));
+        assertFalse(allReceived.isDone());
+
+        assembly.fetchStatements(index);
+        assertNull(equivocating.getHashStatementReader().read(0));
+        assertEquals(0, assembly.countStatementWatches());
+    }
+
+    @Test
+    public void testWatchStopsAtDeadline() throws InterruptedException {
+        Assembly assembly = createAssembly(createOracleIDs(2));
+        CompletableFuture<Void> allReceived = assembly.watchStatements(new HashStatementIAMIndex(0), System.currentTimeMillis());
+        try {
+            allReceived.get(10, TimeUnit.SECONDS);
+            fail("watch did not expire");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        } catch (TimeoutException e) {
+            fail("watch did not expire");
+        }
+        assertEquals(0, assembly.countStatementWatches());
+    }
+
+    private static List<String> createOracleIDs(int amount) {
+        List<String> ids = new ArrayList<>();
+        for(int i = 0; i < amount; i++)
+            ids.add(new IAMWriter().getID());
+        return ids;
+    }
+
+    private static Assembly createAssembly(List<String> ids) {
+        Assembly assembly = new Assembly(null);
+        assembly.addOracles(ids);
+        return assembly;
+    }
+
+    private static List<String> getIDs(List<OracleReader> oracleReaders) {
+        List<String> ids = new ArrayList<>();
+        for(OracleReader oracleReader : oracleReaders)
+            ids.add(oracleReader.getID());
+        return ids;
+    }
+}
@@ -0,0 +1,147 @@
+package oracle;
+
+import exceptions.IotaAPICallFailedException;
+import iam.IAMIndex;
+import iam.IAMWriter;
+import jota.error.ArgumentException;
+import jota.model.Transaction;
+import oracle.statements.hash.HashStatement;
+import oracle.statements.hash.HashStatementIAMIndex;
+import oracle.statements.hash.HastStatementWriter;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import qlvm.QLVM;
+import qubic.EditableQubicSpecification;
+import qubic.QubicReader;
+import qubic.QubicWriter;
+import tangle.InMemoryTangle;
+import tangle.TangleAPI;
+import tangle.TangleBackend;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OracleWriterTest {
+
+    private TangleAPI previousTangleAPI;
+    private FailingBackend backend;
+
+    @Before
+    public void switchToFailingBackend() {
+        previousTangleAPI = TangleAPI.getInstance();
+        backend = new FailingBackend(new InMemoryTangle());
+        TangleAPI.changeBackend(backend, previousTangleAPI.getMWM());
+    }
+
+    @After
+    public void restorePreviousBackend() {
+        TangleAPI.changeBackend(previousTangleAPI.getBackend(), previousTangleAPI.getMWM());
+    }
+
+    @Test
+    public void testEpochDuringOutage() {
+        IAMWriter otherOracle = new IAMWriter();
+        OracleWriter oracleWriter = createQubicWithAssembly(otherOracle);
+        new HastStatementWriter(otherOracle).write(new HashStatement(0, "HASH", new int[2]));
+
+        backend.failing = true;
+        oracleWriter.doHashStatement(0);
+        oracleWriter.doResultStatement();
+        try {
+            oracleWriter.apply();
+            fail("application was sent during outage");
+        } catch (IotaAPICallFailedException e) { }
+
+        // the statement published before the outage is not mistaken as missing
+        backend.failing = false;
+        OracleReader other = findOracleReader(oracleWriter.getAssembly(), otherOracle.getID());
+        assertFalse(other.hasStatement(new HashStatementIAMIndex(0)));
+        oracleWriter.getAssembly().fetchStatements(new HashStatementIAMIndex(0));
+        assertEquals("HASH", other.getHashStatementReader().read(0).getContent());
+    }
+
+    @Test
+    public void testQubicCodeReadsNilDuringOutage() {
+        IAMWriter iamWriter = new IAMWriter();
+        iamWriter.write(new IAMIndex(0), new JSONObject().put("published", true));
+        OracleWriter oracleWriter = createQubicWithAssembly(new IAMWriter());
+
+        String code = "return(type(iam_read('" + iamWriter.getID() + "', 0)));";
+        assertNotEquals("'null'", QLVM.run(code, oracleWriter, 0));
+        backend.failing = true;
+        // the run continues with nil instead of ending in an error
+        assertEquals("'null'", QLVM.run(code, oracleWriter, 0));
+    }
+
+    private static OracleWriter createQubicWithAssembly(IAMWriter otherOracle) {
+        QubicWriter qubicWriter = new QubicWriter();
+        EditableQubicSpecification specification = qubicWriter.getEditable();
+        specification.setCode("return(epoch);");
+        specification.setExecutionStartToSecondsInFuture(60);
+        qubicWriter.publishQubicTransaction();
+
+        OracleWriter oracleWriter = new OracleWriter(new QubicReader(qubicWriter.getID()));
+        qubicWriter.getAssembly().add(oracleWriter.getID());
+        qubicWriter.getAssembly().add(otherOracle.getID());
+        qubicWriter.publishAssemblyTransaction();
+        assertTrue(oracleWriter.assemble());
+        return oracleWriter;
+    }
+
+    private static OracleReader findOracleReader(Assembly assembly, String id) {
+        for(OracleReader oracleReader : assembly.selectOracleReaders(0, assembly.size()))
+            if(oracleReader.getID().equals(id))
+                return oracleReader;
+        throw new IllegalArgumentException("oracle not in assembly: " + id);
+    }
+
+    /**
+     * Behaves like an unreachable node once all retries are used up.
+     * */
+    private static class FailingBackend implements TangleBackend {
+
+        private final TangleBackend backend;
+        private volatile boolean failing = false;
+
+        FailingBackend(TangleBackend backend) {
+            this.backend = backend;
+        }
+
+        private void failIfNecessary() {
+            if(failing)
+                throw new IotaAPICallFailedException("node unreachable", null);
+        }
+
+        @Override
+        public String attach(String address, String tryteMessage, String tag, int mwm) throws ArgumentException {
+            failIfNecessary();
+            return backend.attach(address, tryteMessage, tag, mwm);
+        }
+
+        @Override
+        public List<Transaction> findTransactionsByAddresses(String[] addresses) throws ArgumentException {
+            failIfNecessary();
+            return backend.findTransactionsByAddresses(addresses);
+        }
+
+        @Override
+        public List<Transaction> findTransactionsByHashes(String[] hashes) throws ArgumentException {
+            failIfNecessary();
+            return backend.findTransactionsByHashes(hashes);
+        }
+
+        @Override
+        public long getBalance(String address) throws ArgumentException {
+            failIfNecessary();
+            return backend.getBalance(address);
+        }
+
+        @Override
+        public String getNodeAddress() {
+            return backend.getNodeAddress();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package oracle;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class VoteTallyTest {
+
+    @Test
+    public void testQuorumReachedEarly() {
+        VoteTally tally = new VoteTally(6);
+        for(int i = 0; i < 3; i++)
+            tally.addVote("a", 1);
+        tally.addVote("b", 1);
+        assertFalse(tally.isDecided());
+
+        tally.addVote("a", 1);
+        assertTrue(tally.isQuorumReached());
+        assertTrue(tally.isDecided());
+
+        QuorumBasedResult result = tally.toQuorumBasedResult();
+        assertEquals("a", result.getResult());
+        assertEquals(4, result.getQuorum(), 0);
+        assertEquals(6, result.getQuorumMax(), 0);
+    }
+
+    @Test
+    public void testQuorumImpossibleEarly() {
+        VoteTally tally = new VoteTally(9);
+        tally.addVote("a", 1);
+        tally.addVote("b", 1);
+        tally.abstain(1);
+        assertFalse(tally.isDecided());
+
+        // 'a' could still reach 1 + 5 = 6 = 2/3 of 9
+        tally.addVote("c", 1);
+        assertFalse(tally.isDecided());
+
+        tally.addVote("d", 1);
+        assertTrue(tally.isQuorumImpossible());
+        assertFalse(tally.isQuorumReached());
+        assertNull(tally.toQuorumBasedResult().getResult());
+    }
+
+    @Test
+    public void testLeaderAndTies() {
+        VoteTally tally = new VoteTally(10);
+        assertNull(tally.getLeadingResult());
+        tally.addVote("first", 1);
+        tally.addVote("second", 1);
+        assertEquals("first", tally.getLeadingResult());
+        tally.addVote("second", 1);
+        assertEquals("second", tally.getLeadingResult());
+        assertEquals(2, tally.toQuorumBasedResult().getQuorum(), 0);
+    }
+
+    @Test
+    public void testLongResults() {
+        String result = StringUtils.repeat("x", 5000);
+        VoteTally tally = new VoteTally(3);
+        tally.addVote(result, 1);
+        tally.addVote(new String(result.toCharArray()), 1);
+        tally.addVote(result + "y", 1);
+        assertEquals(result, tally.toQuorumBasedResult().getResult());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTooManyVotes() {
+        VoteTally tally = new VoteTally(1);
+        tally.addVote("a", 1);
+        tally.addVote("a", 1);
+    }
+}
@@ -0,0 +1,99 @@
+package oracle.statements;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class EpochCacheTest {
+
+    @Test
+    public void testEvictsOldestEpochs() {
+        EpochCache<String> cache = new EpochCache<>(3, 0);
+        for(int epoch = 0; epoch < 10; epoch++)
+            cache.put(epoch, "e" + epoch);
+
+        assertEquals(3, cache.size());
+        assertNull(cache.get(6));
+        for(int epoch = 7; epoch < 10; epoch++)
+            assertEquals("e" + epoch, cache.get(epoch));
+        assertEquals(7, cache.getStatistics().getEvictions());
+
+        // an epoch older than all cached ones is not cached when full
+        cache.put(2, "e2");
+        assertFalse(cache.contains(2));
+        assertTrue(cache.contains(7));
+    }
+
+    @Test
+    public void testOutOfOrderAndReplace() {
+        EpochCache<String> cache = new EpochCache<>(100, 0);
+        int[] epochs = {5, 1, 9, 3, 7, 0, 8, 2, 6, 4};
+        for(int epoch : epochs)
+            cache.put(epoch, "e" + epoch);
+        cache.put(3, "replaced");
+
+        assertEquals(10, cache.size());
+        for(int epoch = 0; epoch < 10; epoch++)
+            assertEquals(epoch == 3 ? "replaced" : "e" + epoch, cache.get(epoch));
+        assertNull(cache.get(10));
+
+        EpochCache.Statistics statistics = cache.getStatistics();
+        assertEquals(10, statistics.getHits());
+        assertEquals(1, statistics.getMisses());
+    }
+
+    @Test
+    public void testManyEpochsReuseSlots() {
+        EpochCache<Integer> cache = new EpochCache<>(20, 0);
+        for(int epoch = 0; epoch < 1000; epoch++)
+            cache.put(epoch, epoch);
+        for(int epoch = 980; epoch < 1000; epoch++)
+            assertEquals(Integer.valueOf(epoch), cache.get(epoch));
+        assertEquals(20 * 20, cache.getStatistics().getIndexBytes());
+    }
+
+    @Test
+    public void testExpiresByAge() throws InterruptedException {
+        EpochCache<String> cache = new EpochCache<>(10, 1);
+        cache.put(0, "e0");
+        Thread.sleep(10);
+        assertNull(cache.get(0));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testConcurrentAccess() throws InterruptedException, ExecutionException {
+        EpochCache<Integer> cache = new EpochCache<>(50, 0);
+        int workers = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            // failed assertions are rethrown by Future.get() instead of only ending the worker thread
+            List<Future<?>> futures = new ArrayList<>();
+            for(int t = 0; t < workers; t++) {
+                int offset = t;
+                futures.add(executor.submit(() -> {
+                    for(int epoch = offset; epoch < 2000; epoch += workers) {
+                        cache.put(epoch, epoch);
+                        Integer cached = cache.get(epoch);
+                        assertTrue(cached == null || cached == epoch);
+                    }
+                }));
+            }
+            for(Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(50, cache.size());
+        for(int epoch = 1950; epoch < 2000; epoch++)
+            assertEquals(Integer.valueOf(epoch), cache.get(epoch));
+    }
+}
@@ -0,0 +1,138 @@
+package oracle.statements;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class EpochLogTest {
+
+    private File directory;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("epochlog").toFile();
+        file = new File(directory, "test.log");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if(files != null)
+            for(File f : files)
+                f.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void testAppendAndReopen() throws IOException {
+        EpochLog log = new EpochLog(file);
+        log.append(0, bytes("zero"));
+        log.append(3, bytes("three"));
+        assertEquals("three", string(log.read(3)));
+        assertNull(log.read(1));
+        assertNull(log.read(42));
+        log.close();
+
+        EpochLog reopened = new EpochLog(file);
+        assertEquals("zero", string(reopened.read(0)));
+        assertEquals("three", string(reopened.read(3)));
+        assertFalse(reopened.contains(2));
+        reopened.close();
+    }
+
+    @Test
+    public void testGrowsBeyondInitialMapping() throws IOException {
+        EpochLog log = new EpochLog(file);
+        byte[] payload = new byte[10000];
+        for(int epoch = 0; epoch < 20; epoch++) {
+            payload[0] = (byte)epoch;
+            log.append(epoch, payload);
+        }
+        log.close();
+
+        EpochLog reopened = new EpochLog(file);
+        for(int epoch = 0; epoch < 20; epoch++)
+            assertEquals(epoch, reopened.read(epoch)[0]);
+        reopened.close();
+    }
+
+    @Test
+    public void testSupersedeAndCompact() throws IOException {
+        EpochLog log = new EpochLog(file);
+        log.append(1, bytes("old"));
+        log.append(1, bytes("new"));
+        log.append(2, bytes("two"));
+        int sizeBefore = log.size();
+
+        log.compact(2);
+        assertTrue(log.size() < sizeBefore);
+        assertFalse(log.contains(1));
+        assertEquals("two", string(log.read(2)));
+        log.close();
+
+        EpochLog reopened = new EpochLog(file);
+        assertFalse(reopened.contains(1));
+        assertEquals("two", string(reopened.read(2)));
+        reopened.close();
+    }
+
+    @Test
+    public void testHighEpochs() throws IOException {
+        // an index sized by the highest epoch would need gigabytes here
+        EpochLog log = new EpochLog(file);
+        log.append(Integer.MAX_VALUE - 1, bytes("late"));
+        log.append(Integer.MAX_VALUE, bytes("last"));
+        log.compact(Integer.MAX_VALUE);
+        assertFalse(log.contains(Integer.MAX_VALUE - 1));
+        assertEquals("last", string(log.read(Integer.MAX_VALUE)));
+        log.close();
+
+        EpochLog reopened = new EpochLog(file);
+        assertEquals("last", string(reopened.read(Integer.MAX_VALUE)));
+        reopened.close();
+    }
+
+    @Test
+    public void testTornRecordIsDropped() throws IOException {
+        EpochLog log = new EpochLog(file);
+        log.append(0, bytes("complete"));
+        log.append(1, bytes("torn"));
+        int tornPayloadOffset = log.size() - 4;
+        log.close();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(tornPayloadOffset);
+            raf.write('X');
+        }
+
+        EpochLog reopened = new EpochLog(file);
+        assertEquals("complete", string(reopened.read(0)));
+        assertFalse(reopened.contains(1));
+        reopened.append(1, bytes("rewritten"));
+        assertEquals("rewritten", string(reopened.read(1)));
+        reopened.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsForeignFile() throws IOException {
+        Files.write(file.toPath(), bytes("not an epoch log"));
+        new EpochLog(file);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] b) {
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
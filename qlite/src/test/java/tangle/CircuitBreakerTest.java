@@ -0,0 +1,46 @@
+package tangle;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 3, 60000);
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        assertTrue(circuitBreaker.allowRequest());
+        circuitBreaker.recordFailure();
+        assertFalse(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void testSuccessResetsFailures() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 2, 60000);
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordSuccess();
+        circuitBreaker.recordFailure();
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void testHalfOpenAllowsSingleTrial() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 1, 0);
+        circuitBreaker.recordFailure();
+        assertTrue(circuitBreaker.allowRequest());
+        assertFalse(circuitBreaker.allowRequest());
+        circuitBreaker.recordSuccess();
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void testBackoffStaysWithinBounds() {
+        RetryPolicy retryPolicy = new RetryPolicy(10, 100, 1000);
+        for(int failedAttempts = 1; failedAttempts < 10; failedAttempts++) {
+            long delay = retryPolicy.determineDelay(failedAttempts);
+            assertTrue(delay >= 0 && delay <= Math.min(1000, 100L << (failedAttempts-1)));
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package tangle;
+
+import iam.IAMIndex;
+import iam.IAMKeywordReader;
+import iam.IAMPacketFormat;
+import iam.IAMReader;
+import iam.IAMReaderRegistry;
+import iam.IAMWriter;
+import iam.signing.SignatureScheme;
+import iam.signing.SignatureValidator;
+import jota.error.ArgumentException;
+import jota.model.Transaction;
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class InMemoryTangleTest {
+
+    private TangleAPI previousTangleAPI;
+
+    @Before
+    public void switchToInMemoryTangle() {
+        previousTangleAPI = TangleAPI.getInstance();
+        TangleAPI.changeBackend(new InMemoryTangle(), previousTangleAPI.getMWM());
+    }
+
+    @After
+    public void restorePreviousBackend() {
+        TangleAPI.changeBackend(previousTangleAPI.getBackend(), previousTangleAPI.getMWM());
+    }
+
+    @Test
+    public void testSendAndRead() {
+        String address = TryteTool.generateRandom(TryteTool.TRYTES_PER_ADDRESS);
+        String hash = TangleAPI.getInstance().sendMessage(address, "hello tangle");
+        assertEquals("hello tangle", TangleAPI.getInstance().readTransactionMessage(hash));
+        assertEquals(1, TangleAPI.getInstance().findTransactionsByAddresses(new String[] {address}).size());
+    }
+
+    @Test
+    public void testUnknownHash() {
+        assertNull(TangleAPI.getInstance().readTransactionTrytes(TryteTool.generateRandom(TryteTool.TRYTES_PER_HASH)));
+    }
+
+    @Test
+    public void testDeterministicHashes() {
+        InMemoryTangle tangle1 = new InMemoryTangle(42, 0, 0), tangle2 = new InMemoryTangle(42, 0, 0);
+        try {
+            assertEquals(tangle1.attach(TryteTool.NINE_ADDRESS, "ABC", "", 9), tangle2.attach(TryteTool.NINE_ADDRESS, "ABC", "", 9));
+        } catch (jota.error.ArgumentException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testTransactionFeed() throws InterruptedException {
+        String address = TryteTool.generateRandom(TryteTool.TRYTES_PER_ADDRESS);
+        BlockingQueue<Transaction> received = new LinkedBlockingQueue<>();
+        TangleAPI.getInstance().getTransactionFeed().subscribe(address, received::add);
+
+        String hash = TangleAPI.getInstance().sendMessage(address, "pushed");
+        TangleAPI.getInstance().sendMessage(TryteTool.NINE_ADDRESS, "not watched");
+
+        Transaction transaction = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(transaction);
+        assertEquals(hash, transaction.getHash());
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testIAMPacketInFragments() {
+        IAMWriter iamWriter = new IAMWriter();
+        IAMReader iamReader = new IAMReader(iamWriter.getID());
+        JSONObject sent = new JSONObject().put("object", StringUtils.repeat("fragmented", 300));
+        iamWriter.write(new IAMIndex(3), sent);
+        assertEquals(String.valueOf(sent), String.valueOf(iamReader.read(new IAMIndex(3))));
+    }
+
+    @Test
+    public void testEd25519IAMStream() {
+        Assume.assumeTrue(SignatureScheme.ED25519.isAvailable());
+        IAMWriter iamWriter = new IAMWriter(SignatureScheme.ED25519);
+        IAMReader iamReader = new IAMReader(iamWriter.getID());
+        assertEquals(SignatureScheme.ED25519, iamReader.getSignatureScheme());
+        JSONObject sent = new JSONObject().put("ed25519", true);
+        iamWriter.write(new IAMIndex(0), sent);
+        assertEquals(String.valueOf(sent), String.valueOf(iamReader.read(new IAMIndex(0))));
+    }
+
+    @Test
+    public void testBinaryIAMPacket() {
+        IAMWriter iamWriter = new IAMWriter();
+        iamWriter.setPacketFormat(IAMPacketFormat.BINARY);
+        IAMReader iamReader = new IAMReader(iamWriter.getID());
+        JSONObject sent = new JSONObject().put("object", TryteTool.generateRandom(4000));
+        iamWriter.write(new IAMIndex(5), sent);
+        assertEquals(String.valueOf(sent), String.valueOf(iamReader.read(new IAMIndex(5))));
+    }
+
+    @Test
+    public void testLegacyReadersVerifyJSONPackets() {
+        IAMWriter iamWriter = new IAMWriter();
+        JSONObject sent = new JSONObject().put("zeta", 1).put("b", 1).put("ratings", new JSONObject().put("y", 1).put("alpha", 2));
+        String packetString = TangleAPI.getInstance().readTransactionMessage(iamWriter.write(new IAMIndex(4), sent));
+
+        // readers of earlier versions verify the signature against the re-serialized message
+        JSONObject message = new JSONObject(packetString).getJSONObject("content");
+        assertEquals(String.valueOf(message), JSONCodec.parseMembers(packetString).getRawMember("content"));
+        String publicKeyTrytes = SignatureScheme.extractPublicKeyTrytes(TangleAPI.getInstance().readTransactionTrytes(iamWriter.getID()));
+        String signature = new JSONObject(packetString).getString("signature");
+        assertTrue(SignatureValidator.validate(publicKeyTrytes, signature, iamWriter.buildAddress(new IAMIndex(4)) + message));
+        assertFalse(new JSONObject(packetString).has("version"));
+    }
+
+    @Test
+    public void testReformattedDuplicateDoesNotConflict() {
+        IAMWriter iamWriter = new IAMWriter();
+        IAMIndex index = new IAMIndex(5);
+        JSONObject sent = new JSONObject().put("a", 1).put("b", "legacy");
+        String packetString = TangleAPI.getInstance().readTransactionMessage(iamWriter.write(index, sent));
+
+        // anyone can attach a copy with different whitespace, the legacy fallback still verifies it
+        String rawContent = JSONCodec.parseMembers(packetString).getRawMember("content");
+        String reformatted = packetString.replace(rawContent, rawContent.replace(",", " , ").replace(":", " : "));
+        assertNotEquals(packetString, reformatted);
+        TangleAPI.getInstance().sendMessage(iamWriter.buildAddress(index), reformatted);
+
+        assertEquals(String.valueOf(sent), String.valueOf(new IAMReader(iamWriter.getID()).read(index)));
+    }
+
+    @Test
+    public void testCanonicalIAMPacket() {
+        IAMWriter iamWriter = new IAMWriter();
+        iamWriter.setPacketFormat(IAMPacketFormat.JSON_CANONICAL);
+        JSONObject sent = new JSONObject().put("zeta", 1).put("alpha", "two");
+        String hash = iamWriter.write(new IAMIndex(6), sent);
+
+        assertEquals(2, new JSONObject(TangleAPI.getInstance().readTransactionMessage(hash)).getInt("version"));
+        assertEquals(String.valueOf(sent), String.valueOf(new IAMReader(iamWriter.getID()).read(new IAMIndex(6))));
+    }
+
+    @Test
+    public void testDuplicateIAMPackets() {
+        IAMWriter iamWriter = new IAMWriter();
+        IAMReader iamReader = new IAMReader(iamWriter.getID());
+        JSONObject sent = new JSONObject().put("a", 1).put("b", "duplicate");
+        iamWriter.write(new IAMIndex(7), sent);
+        iamWriter.write(new IAMIndex(7), new JSONObject(sent.toString()));
+        assertEquals(String.valueOf(sent), String.valueOf(iamReader.read(new IAMIndex(7))));
+
+        iamWriter.write(new IAMIndex(7), new JSONObject().put("a", 2));
+        assertNull(iamReader.read(new IAMIndex(7)));
+    }
+
+    @Test
+    public void testReaderRegistry() {
+        IAMWriter[] iamWriters = { new IAMWriter(), new IAMWriter(), new IAMWriter() };
+        List<String> ids = new LinkedList<>();
+        for(IAMWriter iamWriter : iamWriters) {
+            iamWriter.write(new IAMIndex(0), new JSONObject().put("id", iamWriter.getID()));
+            ids.add(iamWriter.getID());
+        }
+
+        IAMReaderRegistry.getInstance().prefetch(ids);
+        for(IAMWriter iamWriter : iamWriters) {
+            IAMReader iamReader = IAMReaderRegistry.getInstance().get(iamWriter.getID());
+            assertSame(iamReader, IAMReaderRegistry.getInstance().get(iamWriter.getID()));
+            assertEquals(iamWriter.getID(), iamReader.read(new IAMIndex(0)).getString("id"));
+        }
+    }
+
+    @Test
+    public void testReadRange() {
+        IAMWriter iamWriter = new IAMWriter();
+        int[] writtenPositions = {0, 1, 3, 150, 201};
+        for(int position : writtenPositions)
+            iamWriter.write(new IAMIndex("RANGE", position), new JSONObject().put("position", position));
+
+        IAMKeywordReader keywordReader = new IAMKeywordReader(new IAMReader(iamWriter.getID()), "RANGE");
+        Iterator<JSONObject> iterator = keywordReader.readRange(0, 205);
+        for(int position = 0; position < 205; position++) {
+            JSONObject read = iterator.next();
+            boolean written = Arrays.binarySearch(writtenPositions, position) >= 0;
+            assertEquals(written ? position : null, read == null ? null : read.getInt("position"));
+        }
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testPollingStopsWithBackend() {
+        TangleAPI.changeBackend(new RequestThreadRecorder(TangleAPI.getInstance().getBackend()), TangleAPI.getInstance().getMWM());
+        PollingTransactionFeed feed = (PollingTransactionFeed)TangleAPI.getInstance().getTransactionFeed();
+        TransactionListener listener = transaction -> { };
+        String address = TryteTool.generateRandom(TryteTool.TRYTES_PER_ADDRESS);
+
+        feed.subscribe(address, listener);
+        assertTrue(feed.isPolling());
+        feed.unsubscribe(address, listener);
+        assertFalse(feed.isPolling());
+
+        feed.subscribe(address, listener);
+        TangleAPI.changeBackend(new InMemoryTangle(), TangleAPI.getInstance().getMWM());
+        assertFalse(feed.isPolling());
+        feed.subscribe(TryteTool.generateRandom(TryteTool.TRYTES_PER_ADDRESS), listener);
+        assertFalse(feed.isPolling());
+    }
+
+    @Test
+    public void testNoRequestsOnVerificationPool() {
+        RequestThreadRecorder recorder = new RequestThreadRecorder(TangleAPI.getInstance().getBackend());
+        TangleAPI.changeBackend(recorder, TangleAPI.getInstance().getMWM());
+        ForkJoinPool verificationPool = new ForkJoinPool(4);
+        IAMReader.setVerificationPool(verificationPool);
+
+        try {
+            // conflicting fragmented packets, both are verified in parallel
+            IAMWriter iamWriter = new IAMWriter();
+            iamWriter.write(new IAMIndex(9), new JSONObject().put("object", StringUtils.repeat("first", 600)));
+            iamWriter.write(new IAMIndex(9), new JSONObject().put("object", StringUtils.repeat("second", 500)));
+            assertNull(new IAMReader(iamWriter.getID()).read(new IAMIndex(9)));
+
+            for(int position = 0; position < 3; position++)
+                iamWriter.write(new IAMIndex("RANGE", position), new JSONObject().put("object", StringUtils.repeat("range", 400)));
+            Iterator<JSONObject> iterator = new IAMKeywordReader(new IAMReader(iamWriter.getID()), "RANGE").readRange(0, 150);
+            for(int position = 0; position < 150; position++)
+                assertEquals(position < 3, iterator.next() != null);
+        } finally {
+            IAMReader.setVerificationPool(ForkJoinPool.commonPool());
+            verificationPool.shutdown();
+        }
+
+        assertEquals(0, recorder.requestsOnForkJoinPool.get());
+    }
+
+    /**
+     * Counts the requests sent from threads of a fork-join pool (such as the verification pool).
+     * */
+    private static class RequestThreadRecorder implements TangleBackend {
+
+        private final TangleBackend backend;
+        private final AtomicInteger requestsOnForkJoinPool = new AtomicInteger();
+
+        RequestThreadRecorder(TangleBackend backend) {
+            this.backend = backend;
+        }
+
+        private void recordRequest() {
+            if(Thread.currentThread() instanceof ForkJoinWorkerThread)
+                requestsOnForkJoinPool.incrementAndGet();
+        }
+
+        @Override
+        public String attach(String address, String tryteMessage, String tag, int mwm) throws ArgumentException {
+            return backend.attach(address, tryteMessage, tag, mwm);
+        }
+
+        @Override
+        public List<Transaction> findTransactionsByAddresses(String[] addresses) throws ArgumentException {
+            recordRequest();
+            return backend.findTransactionsByAddresses(addresses);
+        }
+
+        @Override
+        public List<Transaction> findTransactionsByHashes(String[] hashes) throws ArgumentException {
+            recordRequest();
+            return backend.findTransactionsByHashes(hashes);
+        }
+
+        @Override
+        public long getBalance(String address) throws ArgumentException {
+            return backend.getBalance(address);
+        }
+
+        @Override
+        public String getNodeAddress() {
+            return backend.getNodeAddress();
+        }
+    }
+}
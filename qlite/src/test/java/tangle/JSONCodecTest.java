@@ -0,0 +1,61 @@
+package tangle;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JSONCodecTest {
+
+    private static final String SAMPLE = "{\"epoch\":12,\"type\":\"result statement\",\"big\":12345678901,\"pi\":3.25,\"neg\":-7,"
+            + "\"flags\":[true,false,null],\"nested\":{\"b\":\"x\\\"y\\\\z\\u00e9\\n\",\"a\":[1,{\"c\":\"<\\/tag>\"}]},\"empty\":{},\"none\":[]}";
+
+    @Test
+    public void testParseLikeOrgJSON() {
+        JSONObject expected = new JSONObject(SAMPLE);
+        JSONObject parsed = JSONCodec.parse(SAMPLE);
+        assertEquals(expected.toString(), parsed.toString());
+        assertEquals(12, parsed.getInt("epoch"));
+        assertEquals(12345678901L, parsed.getLong("big"));
+        assertEquals(expected.get("pi").getClass(), parsed.get("pi").getClass());
+        assertSame(JSONObject.NULL, parsed.getJSONArray("flags").get(2));
+    }
+
+    @Test
+    public void testCanonicalWrite() {
+        JSONObject first = new JSONObject().put("zeta", 1).put("alpha", new JSONObject().put("y", 2).put("x", new int[] {3, 4}));
+        JSONObject second = new JSONObject().put("alpha", new JSONObject().put("x", new JSONArray("[3,4]")).put("y", 2)).put("zeta", 1);
+        assertEquals("{\"alpha\":{\"x\":[3,4],\"y\":2},\"zeta\":1}", JSONCodec.write(first));
+        assertEquals(JSONCodec.write(first), JSONCodec.write(second));
+        assertEquals(JSONCodec.write(new JSONObject(SAMPLE)), JSONCodec.write(JSONCodec.parse(JSONCodec.write(new JSONObject(SAMPLE)))));
+    }
+
+    @Test
+    public void testRawMembers() {
+        String json = " { \"content\" : {\"b\":1, \"a\":2} , \"signature\":\"ABC\" }";
+        JSONCodec.ParsedObject parsed = JSONCodec.parseMembers(new StringBuilder(json));
+        assertEquals("{\"b\":1, \"a\":2}", parsed.getRawMember("content"));
+        assertEquals("\"ABC\"", parsed.getRawMember("signature"));
+        assertNull(parsed.getRawMember("missing"));
+        assertEquals(2, parsed.getObject().getJSONObject("content").getInt("a"));
+    }
+
+    @Test
+    public void testIgnoresTrailingContent() {
+        assertEquals(1, JSONCodec.parse("{\"a\":1}\u0000\u0000").getInt("a"));
+    }
+
+    @Test
+    public void testRejectsMalformed() {
+        String[] malformed = { "", "[1]", "{\"a\":1", "{\"a\" 1}", "{a:1}", "{\"a\":01}", "{\"a\":1.}", "{\"a\":tru}",
+                "{\"a\":\"\\x\"}", "{\"a\":1,\"a\":2}", "{\"a\":[1,]}", "{\"a\":\"unterminated}" };
+        for(String json : malformed) {
+            try {
+                JSONCodec.parse(json);
+                fail("accepted malformed json: " + json);
+            } catch (JSONException e) { }
+        }
+    }
+}
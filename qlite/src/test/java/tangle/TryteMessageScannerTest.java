@@ -0,0 +1,46 @@
+package tangle;
+
+import jota.utils.TrytesConverter;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TryteMessageScannerTest {
+
+    private static final int FRAGMENT_LENGTH = TryteTool.TRYTES_PER_TRANSACTION_MESSAGE;
+
+    @Test
+    public void testDecodeMessage() {
+        String message = "{\"a\":\"line\\nbreak\"}";
+        assertEquals(message, TryteMessageScanner.decodeMessage(toFragment(message)));
+        assertEquals("", TryteMessageScanner.decodeMessage(toFragment("")));
+    }
+
+    @Test
+    public void testTerminatorOnlyAtEvenOffsets() {
+        // '\n' is encoded as 'J9' and 'Q' as '9C', so the encoding contains '99' at an odd offset
+        String message = "a\nQb";
+        assertTrue(TrytesConverter.toTrytes(message).contains("99"));
+        assertEquals(message, TryteMessageScanner.decodeMessage(toFragment(message)));
+    }
+
+    @Test
+    public void testFullFragment() {
+        String message = StringUtils.repeat('x', TryteMessageScanner.CHARS_PER_FRAGMENT);
+        char[] buffer = new char[TryteMessageScanner.CHARS_PER_FRAGMENT + 3];
+        assertEquals(message.length(), TryteMessageScanner.decodeMessage(toFragment(message), buffer, 3));
+        assertEquals(message, new String(buffer, 3, message.length()));
+    }
+
+    @Test
+    public void testExtractTrytes() {
+        assertEquals("ABC9", TryteMessageScanner.extractTrytes(StringUtils.rightPad("ABC", FRAGMENT_LENGTH, '9')));
+        assertEquals("9ABC", TryteMessageScanner.extractTrytes(StringUtils.rightPad("9ABC", FRAGMENT_LENGTH, '9')));
+        assertEquals("", TryteMessageScanner.extractTrytes(StringUtils.repeat('9', FRAGMENT_LENGTH)));
+    }
+
+    private static String toFragment(String message) {
+        return StringUtils.rightPad(TrytesConverter.toTrytes(message), FRAGMENT_LENGTH, '9');
+    }
+}
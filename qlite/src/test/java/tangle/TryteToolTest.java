@@ -43,6 +43,61 @@ public class TryteToolTest {
         }
     }
 
+    @Test
+    public void testDenseEncodeDecode() {
+        for(int length = 0; length < 40; length++) {
+            byte[] originalBytes = new byte[length];
+            new Random().nextBytes(originalBytes);
+            String trytes = TryteTool.bytesToDenseTrytes(originalBytes);
+            assertTrue(trytes.matches("^[A-Z]*$"));
+            assertEquals(TryteTool.lengthOfDenseTrytes(length), trytes.length());
+            assertArrayEquals(originalBytes, TryteTool.denseTrytesToBytes(trytes, length));
+        }
+
+        byte[] originalBytes = genRandByteArray();
+        String trytes = TryteTool.bytesToDenseTrytes(originalBytes);
+        assertTrue(trytes.length() < TryteTool.bytesToTrytes(originalBytes).length());
+        assertArrayEquals(originalBytes, TryteTool.denseTrytesToBytes(trytes, originalBytes.length));
+    }
+
+    @Test
+    public void testBufferEncodeDecode() {
+        byte[] bytes = genRandByteArray();
+        char[] buffer = new char[4 + 2*bytes.length];
+        assertEquals(buffer.length, TryteTool.bytesToTrytes(bytes, 0, bytes.length, buffer, 4));
+        assertEquals(TryteTool.bytesToTrytes(bytes), new String(buffer, 4, 2*bytes.length));
+
+        byte[] decoded = new byte[bytes.length+1];
+        assertEquals(bytes.length, TryteTool.trytesToBytes(new String(buffer, 4, 2*bytes.length) + "99ABC", decoded, 1));
+        assertArrayEquals(bytes, Arrays.copyOfRange(decoded, 1, decoded.length));
+        assertEquals(0, TryteTool.trytesToBytes("9AB").length);
+    }
+
+    @Test
+    public void testIsTryteSequence() {
+        assertTrue(TryteTool.isTryteSequence(""));
+        assertTrue(TryteTool.isTryteSequence("ABCXYZ9"));
+        assertTrue(TryteTool.isTryteSequence(TryteTool.generateRandom(200)));
+        for(String noTrytes : new String[] {"abc", "AB C", "A-B", "A\u00c4", "0", "{", "@", "["})
+            assertFalse(noTrytes, TryteTool.isTryteSequence(noTrytes));
+    }
+
+    @Test
+    public void testGenerateRandom() {
+        String trytes = TryteTool.generateRandom(81);
+        assertEquals(81, trytes.length());
+        assertTrue(trytes.matches(TRYTE_REGEX));
+    }
+
+    @Test
+    public void testPositiveLongToTrytes() {
+        assertEquals("99999999999999", TryteTool.positiveLongToTrytes(0));
+        assertEquals("9999999999999Y", TryteTool.positiveLongToTrytes(25));
+        assertEquals("999999999999A9", TryteTool.positiveLongToTrytes(26));
+        assertEquals(14, TryteTool.positiveLongToTrytes(Long.MAX_VALUE).length());
+        assertNotEquals(TryteTool.positiveLongToTrytes(Long.MAX_VALUE), TryteTool.positiveLongToTrytes(Long.MAX_VALUE-1));
+    }
+
     /**
      * @return random byte array of random length (1000-1020 bytes)
      * */
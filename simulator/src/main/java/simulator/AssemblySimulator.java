@@ -0,0 +1,128 @@
+package simulator;
+
+import iam.IAMWriteQueue;
+import oracle.OracleManager;
+import oracle.OracleWriter;
+import oracle.statements.StatementStore;
+import qubic.EditableQubicSpecification;
+import qubic.QubicReader;
+import qubic.QubicWriter;
+import tangle.InMemoryTangle;
+import tangle.TangleAPI;
+
+import java.io.File;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * @author microhash
+ *
+ * The AssemblySimulator runs qubics and their complete assemblies on a single machine against an
+ * InMemoryTangle. It drives them through the assembly phase and many epochs, then reports per-phase
+ * latencies, throughput, missed deadlines and the quorum rate. Use it to find out how many oracles
+ * and qubics a node can host before the epoch timing falls apart.
+ *
+ * Usage: AssemblySimulator [--qubics 1] [--oracles 10] [--epochs 5] [--hash-period 3] [--result-period 2]
+ *                          [--runtime-limit 1] [--latency 20] [--pow 50] [--seed 0] [--setup auto] [--code 'return(epoch^2);']
+ *                          [--write-behind 0] [--store directory]
+ * */
+public class AssemblySimulator {
+
+    private static final int MWM = 9;
+    private static final long TERMINATION_TIMEOUT_MILLIS = 30000;
+
+    private final SimulationConfig config;
+    private final SimulationReport report = new SimulationReport();
+    private final List<OracleManager> oracleManagers = new LinkedList<>();
+
+    public static void main(String[] args) {
+        SimulationConfig config = SimulationConfig.fromArgs(args);
+        AssemblySimulator simulator = new AssemblySimulator(config);
+        long wallTimeMillis = simulator.run();
+        simulator.getReport().print(System.out, config, wallTimeMillis);
+        System.exit(0);
+    }
+
+    public AssemblySimulator(SimulationConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Sets up all qubics and oracles, runs the configured amount of epochs and stops the oracles again.
+     * @return wall time of the execution phase in milliseconds
+     * */
+    public long run() {
+        TangleAPI.changeBackend(new InMemoryTangle(config.seed, config.lookupLatencyMillis, config.powMillis), MWM);
+        if(config.writeQueueCapacity > 0)
+            report.writeQueue = new IAMWriteQueue(config.writeQueueCapacity);
+        if(config.storeDirectory != null)
+            StatementStore.changeDirectory(new File(config.storeDirectory));
+
+        int executionStart = 0;
+        for(int i = 0; i < config.qubics; i++)
+            executionStart = setUpQubic();
+
+        for(OracleManager oracleManager : oracleManagers)
+            oracleManager.start();
+
+        sleepUntil(1000L * executionStart);
+        long executionPhaseStart = System.currentTimeMillis();
+        sleepUntil(1000L * (executionStart + config.epochs * config.getEpochDuration()));
+
+        for(OracleManager oracleManager : oracleManagers)
+            oracleManager.terminate();
+        awaitTermination();
+
+        return System.currentTimeMillis() - executionPhaseStart;
+    }
+
+    /**
+     * Publishes a qubic, creates its oracles and publishes the assembly transaction.
+     * @return execution start of the qubic (unix timestamp)
+     * */
+    private int setUpQubic() {
+        QubicWriter qubicWriter = new QubicWriter();
+        EditableQubicSpecification specification = qubicWriter.getEditable();
+        specification.setCode(config.code);
+        specification.setHashPeriodDuration(config.hashPeriodDuration);
+        specification.setResultPeriodDuration(config.resultPeriodDuration);
+        specification.setRuntimeLimit(config.runtimeLimit);
+        specification.setExecutionStartToSecondsInFuture(config.determineSetupSeconds());
+        qubicWriter.publishQubicTransaction();
+
+        QubicReader qubicReader = new QubicReader(qubicWriter.getID());
+        MonitoringListener monitoringListener = new MonitoringListener(qubicReader.getSpecification(), report);
+
+        for(int i = 0; i < config.oracles; i++) {
+            OracleWriter oracleWriter = new OracleWriter(qubicReader);
+            oracleWriter.getIAMWriter().setWriteQueue(report.writeQueue);
+            oracleWriter.subscribeOracleListener(monitoringListener);
+            qubicWriter.getAssembly().add(oracleWriter.getID());
+            oracleManagers.add(new OracleManager(oracleWriter));
+        }
+
+        qubicWriter.publishAssemblyTransaction();
+        return qubicReader.getSpecification().getExecutionStartUnix();
+    }
+
+    private void awaitTermination() {
+        long deadline = System.currentTimeMillis() + TERMINATION_TIMEOUT_MILLIS;
+        for(OracleManager oracleManager : oracleManagers)
+            while (!oracleManager.isPaused() && !oracleManager.isAborted() && System.currentTimeMillis() < deadline)
+                sleepUntil(System.currentTimeMillis() + 100);
+    }
+
+    private static void sleepUntil(long unixMillis) {
+        long millis = unixMillis - System.currentTimeMillis();
+        if(millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public SimulationReport getReport() {
+        return report;
+    }
+}
@@ -0,0 +1,107 @@
+package simulator;
+
+import constants.TangleJSONConstants;
+import oracle.statements.hash.HashStatement;
+import oracle.statements.result.ResultStatement;
+import org.json.JSONObject;
+import tangle.JSONCodec;
+import tangle.TryteTool;
+
+import java.util.Random;
+
+/**
+ * @author microhash
+ *
+ * Compares the JSON handling of IAM packets through JSONCodec with the previous org.json path. Each operation
+ * serializes a statement into an IAM packet as the writer does and reads it back as the reader does, including
+ * the string which is verified against the signature and compared when looking for consensus.
+ *
+ * Usage: JSONCodecBenchmark [--packets 1000] [--rounds 20] [--result-length 200]
+ * */
+public class JSONCodecBenchmark {
+
+    private static final String SIGNATURE = TryteTool.generateRandom(128);
+
+    public static void main(String[] args) {
+        int packets = 1000, rounds = 20, resultLength = 200;
+        for(int i = 0; i+1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--packets": packets = Integer.parseInt(args[i+1]); break;
+                case "--rounds": rounds = Integer.parseInt(args[i+1]); break;
+                case "--result-length": resultLength = Integer.parseInt(args[i+1]); break;
+                default: throw new IllegalArgumentException("unknown argument: " + args[i]);
+            }
+        }
+
+        JSONObject[] messages = generateMessages(packets, resultLength);
+
+        long sink = 0, orgJSONNanos = 0, codecNanos = 0;
+        for(int round = 0; round < rounds; round++) {
+            // the first half of the rounds warms up the JIT
+            long start = System.nanoTime();
+            for(JSONObject message : messages)
+                sink += orgJSONRoundTrip(message).length();
+            long afterOrgJSON = System.nanoTime();
+            for(JSONObject message : messages)
+                sink += codecRoundTrip(message).length();
+            long afterCodec = System.nanoTime();
+            if(round >= rounds / 2) {
+                orgJSONNanos += afterOrgJSON - start;
+                codecNanos += afterCodec - afterOrgJSON;
+            }
+        }
+
+        long measuredOperations = (long)packets * (rounds - rounds / 2);
+        System.out.println("packets: " + packets + ", result length: " + resultLength + ", measured rounds: " + (rounds - rounds / 2));
+        System.out.printf("org.json:  %8.2f us/packet%n", orgJSONNanos / 1000.0 / measuredOperations);
+        System.out.printf("JSONCodec: %8.2f us/packet%n", codecNanos / 1000.0 / measuredOperations);
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private static JSONObject[] generateMessages(int amount, int resultLength) {
+        Random random = new Random(0);
+        JSONObject[] messages = new JSONObject[amount];
+        for(int i = 0; i < amount; i++) {
+            if(i % 2 == 0) {
+                ResultStatement resultStatement = new ResultStatement(i, "{\"value\":\"" + TryteTool.generateRandom(resultLength) + "\"}");
+                messages[i] = resultStatement.toJSON();
+            } else {
+                int[] ratings = new int[20];
+                for(int j = 0; j < ratings.length; j++)
+                    ratings[j] = random.nextInt(3) - 1;
+                messages[i] = new HashStatement(i, TryteTool.generateRandom(40), ratings).toJSON();
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Previous path: the message is serialized for signing and again as part of the packet. The reader parses
+     * the packet and serializes the message again for the signature check and for the consensus comparison.
+     * */
+    private static String orgJSONRoundTrip(JSONObject message) {
+        String signed = message.toString();
+        JSONObject iamPacket = new JSONObject();
+        iamPacket.put(TangleJSONConstants.IAM_PACKET_MESSAGE, message);
+        iamPacket.put(TangleJSONConstants.IAM_PACKET_SIGNATURE, SIGNATURE);
+        String packetString = iamPacket.toString();
+
+        JSONObject read = new JSONObject(packetString).getJSONObject(TangleJSONConstants.IAM_PACKET_MESSAGE);
+        String verified = read.toString();
+        String compared = read.toString();
+        return signed.length() == verified.length() ? compared : signed;
+    }
+
+    /**
+     * Current path: the message is serialized once, the reader keeps its raw text while parsing.
+     * */
+    private static String codecRoundTrip(JSONObject message) {
+        String signed = JSONCodec.write(message);
+        String packetString = "{" + JSONObject.quote(TangleJSONConstants.IAM_PACKET_MESSAGE) + ":" + signed
+                + "," + JSONObject.quote(TangleJSONConstants.IAM_PACKET_SIGNATURE) + ":" + JSONObject.quote(SIGNATURE) + "}";
+
+        JSONCodec.ParsedObject read = JSONCodec.parseMembers(packetString);
+        String verified = read.getRawMember(TangleJSONConstants.IAM_PACKET_MESSAGE);
+        return signed.length() == verified.length() ? verified : signed;
+    }
+}
@@ -0,0 +1,52 @@
+package simulator;
+
+import oracle.OracleListener;
+import oracle.OracleWriter;
+import oracle.QuorumBasedResult;
+import qubic.QubicSpecification;
+
+/**
+ * @author microhash
+ *
+ * Reports the phase timings of an oracle to the SimulationReport and checks
+ * whether the statements were published within their periods.
+ * */
+class MonitoringListener extends OracleListener {
+
+    private final QubicSpecification specification;
+    private final SimulationReport report;
+
+    MonitoringListener(QubicSpecification specification, SimulationReport report) {
+        this.specification = specification;
+        this.report = report;
+    }
+
+    @Override
+    public void onReceiveEpochResult(int epochIndex, QuorumBasedResult qbr) {
+        if(qbr.getResult() != null)
+            report.quorumsReached.incrementAndGet();
+        else
+            report.quorumsMissed.incrementAndGet();
+    }
+
+    @Override
+    public void onPhaseCompleted(int epochIndex, OracleWriter.Phase phase, long durationMillis) {
+        report.addPhaseDuration(phase, durationMillis);
+        if(phase == OracleWriter.Phase.HASH_PUBLISH && System.currentTimeMillis() > hashPeriodEnd(epochIndex))
+            report.missedHashDeadlines.incrementAndGet();
+        if(phase == OracleWriter.Phase.RESULT_PUBLISH && System.currentTimeMillis() > epochEnd(epochIndex))
+            report.missedResultDeadlines.incrementAndGet();
+    }
+
+    private long hashPeriodEnd(int epochIndex) {
+        return 1000L * (epochStart(epochIndex) + specification.getHashPeriodDuration());
+    }
+
+    private long epochEnd(int epochIndex) {
+        return 1000L * (epochStart(epochIndex) + specification.getEpochDuration());
+    }
+
+    private long epochStart(int epochIndex) {
+        return specification.getExecutionStartUnix() + (long)epochIndex * specification.getEpochDuration();
+    }
+}
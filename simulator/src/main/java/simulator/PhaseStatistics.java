@@ -0,0 +1,47 @@
+package simulator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author microhash
+ *
+ * Collects the measured durations of a single phase and summarizes them.
+ * */
+public class PhaseStatistics {
+
+    private final List<Long> durations = new ArrayList<>();
+
+    public synchronized void add(long durationMillis) {
+        durations.add(durationMillis);
+    }
+
+    public synchronized int count() {
+        return durations.size();
+    }
+
+    public synchronized double mean() {
+        long sum = 0;
+        for(long duration : durations)
+            sum += duration;
+        return durations.isEmpty() ? 0 : (double)sum / durations.size();
+    }
+
+    /**
+     * @param percentile value between 0 and 100
+     * @return the duration below which the given percentage of measurements fall
+     * */
+    public synchronized long percentile(double percentile) {
+        if(durations.isEmpty())
+            return 0;
+        List<Long> sorted = new ArrayList<>(durations);
+        Collections.sort(sorted);
+        int index = (int)Math.ceil(percentile / 100 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size()-1, index)));
+    }
+
+    public synchronized long max() {
+        return durations.isEmpty() ? 0 : Collections.max(durations);
+    }
+}
@@ -0,0 +1,72 @@
+package simulator;
+
+/**
+ * @author microhash
+ *
+ * Parameters of a simulation run. Can be parsed from command line arguments
+ * of the form '--name value', e.g. '--oracles 20 --epochs 10'.
+ * */
+public class SimulationConfig {
+
+    int qubics = 1;
+    int oracles = 10;
+    int epochs = 5;
+    int hashPeriodDuration = 3;
+    int resultPeriodDuration = 2;
+    int runtimeLimit = 1;
+    long lookupLatencyMillis = 20;
+    long powMillis = 50;
+    long seed = 0;
+    int setupSeconds = -1;
+    int writeQueueCapacity = 0;
+    String storeDirectory = null;
+    String code = "return(epoch^2);";
+
+    public static SimulationConfig fromArgs(String[] args) {
+        SimulationConfig config = new SimulationConfig();
+        if(args.length % 2 != 0)
+            throw new IllegalArgumentException("arguments must be pairs of '--name value'");
+        for(int i = 0; i < args.length; i += 2)
+            config.set(args[i], args[i+1]);
+        return config;
+    }
+
+    private void set(String name, String value) {
+        switch (name) {
+            case "--qubics": qubics = Integer.parseInt(value); break;
+            case "--oracles": oracles = Integer.parseInt(value); break;
+            case "--epochs": epochs = Integer.parseInt(value); break;
+            case "--hash-period": hashPeriodDuration = Integer.parseInt(value); break;
+            case "--result-period": resultPeriodDuration = Integer.parseInt(value); break;
+            case "--runtime-limit": runtimeLimit = Integer.parseInt(value); break;
+            case "--latency": lookupLatencyMillis = Long.parseLong(value); break;
+            case "--pow": powMillis = Long.parseLong(value); break;
+            case "--seed": seed = Long.parseLong(value); break;
+            case "--setup": setupSeconds = Integer.parseInt(value); break;
+            case "--code": code = value; break;
+            case "--write-behind": writeQueueCapacity = Integer.parseInt(value); break;
+            case "--store": storeDirectory = value; break;
+            default: throw new IllegalArgumentException("unknown argument: " + name);
+        }
+    }
+
+    /**
+     * @return seconds between publishing the qubic transaction and the start of the execution phase
+     * */
+    int determineSetupSeconds() {
+        // every oracle attaches its iam stream root and is added to the assembly during the setup
+        return setupSeconds >= 0 ? setupSeconds : 5 + (int)Math.ceil(qubics * oracles * (lookupLatencyMillis + powMillis) / 1000.0);
+    }
+
+    int getEpochDuration() {
+        return hashPeriodDuration + resultPeriodDuration;
+    }
+
+    @Override
+    public String toString() {
+        return qubics + " qubic(s) x " + oracles + " oracle(s), " + epochs + " epochs of " + hashPeriodDuration + "s+" + resultPeriodDuration + "s"
+                + ", latency " + lookupLatencyMillis + "ms, pow " + powMillis + "ms, seed " + seed
+                + (writeQueueCapacity > 0 ? ", write-behind " + writeQueueCapacity : "")
+                + (storeDirectory != null ? ", store " + storeDirectory : "");
+    }
+}
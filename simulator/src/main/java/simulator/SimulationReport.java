@@ -0,0 +1,62 @@
+package simulator;
+
+import iam.IAMWriteQueue;
+import oracle.OracleWriter;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author microhash
+ *
+ * Aggregates the measurements of all oracles in a simulation run.
+ * */
+public class SimulationReport {
+
+    private final Map<OracleWriter.Phase, PhaseStatistics> statisticsByPhase = new EnumMap<>(OracleWriter.Phase.class);
+    final AtomicInteger missedHashDeadlines = new AtomicInteger();
+    final AtomicInteger missedResultDeadlines = new AtomicInteger();
+    final AtomicInteger quorumsReached = new AtomicInteger();
+    final AtomicInteger quorumsMissed = new AtomicInteger();
+    IAMWriteQueue writeQueue;
+
+    public SimulationReport() {
+        for(OracleWriter.Phase phase : OracleWriter.Phase.values())
+            statisticsByPhase.put(phase, new PhaseStatistics());
+    }
+
+    void addPhaseDuration(OracleWriter.Phase phase, long durationMillis) {
+        statisticsByPhase.get(phase).add(durationMillis);
+    }
+
+    public PhaseStatistics getStatistics(OracleWriter.Phase phase) {
+        return statisticsByPhase.get(phase);
+    }
+
+    /**
+     * @return share of determined epoch results that reached the quorum (0 to 1)
+     * */
+    public double quorumRate() {
+        int total = quorumsReached.get() + quorumsMissed.get();
+        return total == 0 ? 0 : (double)quorumsReached.get() / total;
+    }
+
+    public void print(PrintStream out, SimulationConfig config, long wallTimeMillis) {
+        out.println("simulation: " + config);
+        out.printf("%-15s %8s %10s %8s %8s %8s%n", "phase", "count", "mean[ms]", "p50", "p95", "max");
+        for(OracleWriter.Phase phase : OracleWriter.Phase.values()) {
+            PhaseStatistics statistics = statisticsByPhase.get(phase);
+            out.printf("%-15s %8d %10.1f %8d %8d %8d%n", phase.name().toLowerCase(), statistics.count(), statistics.mean(),
+                    statistics.percentile(50), statistics.percentile(95), statistics.max());
+        }
+        int statementsPublished = getStatistics(OracleWriter.Phase.HASH_PUBLISH).count() + getStatistics(OracleWriter.Phase.RESULT_PUBLISH).count();
+        out.printf("throughput:      %.2f statements/s (%d in %.1fs)%n", statementsPublished * 1000.0 / wallTimeMillis, statementsPublished, wallTimeMillis / 1000.0);
+        out.printf("missed deadlines: %d hash, %d result%n", missedHashDeadlines.get(), missedResultDeadlines.get());
+        out.printf("quorum rate:     %.1f%% (%d of %d)%n", quorumRate() * 100, quorumsReached.get(), quorumsReached.get() + quorumsMissed.get());
+        if(writeQueue != null)
+            out.printf("write-behind:    %d completed, %d failed, %d shed, %d expired, mean latency %.1fms%n", writeQueue.getCompletedCount(),
+                    writeQueue.getFailedCount(), writeQueue.getShedCount(), writeQueue.getExpiredCount(), writeQueue.getAverageLatencyMillis());
+    }
+}